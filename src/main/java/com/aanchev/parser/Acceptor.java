@@ -0,0 +1,30 @@
+package com.aanchev.parser;
+
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * The recognise-only counterpart of a {@link Handler}: decides whether a match is accepted, without constructing a result.
+ * {@code children} tells (lazily) whether the region of each capture group is itself valid; like parsing it, reading
+ * the entry of an invalid region aborts the whole validation.
+ */
+@FunctionalInterface
+public interface Acceptor {
+    boolean accepts(MatchResult match, List<Boolean> children, Parser parser);
+
+
+    static Acceptor allChildren() {
+        return (match, children, parser) -> {
+            for (Boolean child : children) {
+                if (!child) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    static Acceptor matched() {
+        return (match, children, parser) -> true;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+/**
+ * Serves whole-input parses from a {@link PersistentParseCache}, parsing (and storing) only on a miss.
+ */
+public class CachingParser<O> implements Parser {
+
+    private final Parser parser;
+    private final PersistentParseCache<O> cache;
+
+    public CachingParser(Parser parser, PersistentParseCache<O> cache) {
+        this.parser = parser;
+        this.cache = cache;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> E parse(CharSequence input) {
+        O result = cache.get(input);
+        if (result == null) {
+            result = parser.parse(input);
+            cache.put(input, result);
+        }
+        return (E) result;
+    }
+}
@@ -0,0 +1,952 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Static worst-case complexity (and ReDoS) analysis of a grammar.
+ * <p>
+ * Inspects the {@link Rule#pattern() patterns} of the rules, as well as the delimiters of group and operator rules,
+ * for nested quantifiers, ambiguous (overlapping) quantifiers and downstripping recursion, and estimates the
+ * worst-case complexity of each rule. Every finding can generate adversarial inputs demonstrating the problem.
+ * <p>
+ * The analysis is a conservative heuristic - a grammar can be made to pass by making quantifiers possessive
+ * ({@code .*+}) or groups atomic ({@code (?>...)}) where backtracking is not needed.
+ * <pre>{@code
+ * analyze(rules).verify(Complexity.QUADRATIC);
+ * }</pre>
+ */
+public class ComplexityAnalyzer {
+
+    private ComplexityAnalyzer() {
+    }
+
+    public static Report analyze(List<? extends Rule<?>> rules) {
+        List<Finding> findings = new ArrayList<>();
+        List<Complexity> complexities = new ArrayList<>();
+
+        for (int i = 0; i < rules.size(); i++) {
+            List<Finding> ruleFindings = analyze(i, rules.get(i));
+
+            Complexity complexity = Complexity.LINEAR;
+            for (Finding finding : ruleFindings) {
+                complexity = complexity.max(finding.getComplexity());
+            }
+
+            findings.addAll(ruleFindings);
+            complexities.add(complexity);
+        }
+
+        return new Report(unmodifiableList(findings), unmodifiableList(complexities));
+    }
+
+    private static List<Finding> analyze(int index, Rule<?> rule) {
+        List<Finding> findings = new ArrayList<>();
+
+        if (rule instanceof GroupRule) {
+            GroupRule<?> groupRule = (GroupRule<?>) rule;
+            Sequence opening = RegexTree.parse(groupRule.getOpening());
+            Sequence closing = RegexTree.parse(groupRule.getClosing());
+
+            analyzeDelimiter(index, groupRule.getOpening(), opening, findings);
+            analyzeDelimiter(index, groupRule.getClosing(), closing, findings);
+            findings.add(new Finding(index, groupRule.getOpening() + " " + groupRule.getClosing(),
+                    Problem.NESTED_GROUPS, Complexity.QUADRATIC,
+                    "", opening.witness(), closing.witness(), ""));
+            return findings;
+        }
+
+        Delimiters delimiters = null;
+        if (rule instanceof MultiGroupRule) {
+            delimiters = ((MultiGroupRule<?>) rule).getDelimiters();
+        }
+        if (rule instanceof OperatorRule) {
+            OperatorRule<?> operatorRule = (OperatorRule<?>) rule;
+            delimiters = operatorRule.getDelimiters();
+            for (OperatorRule.Operator<?> operator : operatorRule.getOperators()) {
+                analyzeDelimiter(index, operator.getPattern(), RegexTree.parse(operator.getPattern()), findings);
+            }
+        }
+        if (rule instanceof ListRule) {
+            ListRule<?> listRule = (ListRule<?>) rule;
+            delimiters = listRule.getDelimiters();
+            analyzeDelimiter(index, listRule.getSeparator(), RegexTree.parse(listRule.getSeparator()), findings);
+            analyzePattern(index, rule.pattern(), findings);
+        }
+        if (delimiters != null) {
+            String brackets = delimiters.getBrackets();
+            if (!brackets.isEmpty()) {
+                findings.add(new Finding(index, brackets, Problem.NESTED_GROUPS, Complexity.QUADRATIC,
+                        "", brackets.substring(0, 1), brackets.substring(1, 2), ""));
+            }
+            return findings;
+        }
+
+        analyzePattern(index, rule.pattern(), findings);
+        return findings;
+    }
+
+    /**
+     * Delimiters are searched for (with {@code find()}) rather than matched against whole regions.
+     */
+    private static void analyzeDelimiter(int index, Pattern pattern, Sequence tree, List<Finding> findings) {
+        findNestedQuantifiers(index, pattern, true, tree, "", findings);
+
+        Node first = tree.nodes.isEmpty() ? null : tree.nodes.get(0);
+        if (first != null && first.isBacktrackingUnbounded()) {
+            findings.add(new Finding(index, pattern.pattern(), Problem.UNANCHORED_DELIMITER, Complexity.QUADRATIC,
+                    "", first.witnessOnce(), "", killer(pattern, true, "", first.witnessOnce(), "", first.chars)));
+        }
+    }
+
+    private static void analyzePattern(int index, Pattern pattern, List<Finding> findings) {
+        Sequence tree = RegexTree.parse(pattern);
+
+        findNestedQuantifiers(index, pattern, false, tree, "", findings);
+        findAmbiguousQuantifiers(index, pattern, tree, "", findings);
+
+        // a capture group that can be almost as long as the whole region, and start the same way, may be
+        // matched by this very rule again - the region then shrinks by a constant amount per level
+        CharSet first = tree.firstChars();
+        for (int i = 0; i < tree.nodes.size(); i++) {
+            Node node = tree.nodes.get(i);
+            if (node.capturing && node.containsUnbounded() && node.firstChars().overlaps(first)
+                    && canContainTheRest(tree, i)) {
+                findings.add(new Finding(index, pattern.pattern(), Problem.RECURSIVE_DOWNSTRIPPING, Complexity.QUADRATIC,
+                        "", tree.witness(0, i), tree.witness(i + 1, tree.nodes.size()), ""));
+                break;
+            }
+        }
+    }
+
+    private static boolean canContainTheRest(Sequence sequence, int group) {
+        return canContain(sequence.nodes.get(group).chars, sequence, group);
+    }
+
+    private static boolean canContain(CharSet chars, Sequence sequence, int except) {
+        for (int i = 0; i < sequence.nodes.size(); i++) {
+            Node node = sequence.nodes.get(i);
+            if (i == except || node.min == 0 || node.chars.isEmpty() || node.lookaround) {
+                continue;
+            }
+
+            boolean contained = node.alternatives != null && node.alternatives.size() == 1
+                    ? canContain(chars, node.alternatives.get(0), -1)
+                    : chars.overlaps(node.chars);
+            if (!contained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void findNestedQuantifiers(int index, Pattern pattern, boolean searched, Sequence sequence, String prefix,
+                                              List<Finding> findings) {
+        for (int i = 0; i < sequence.nodes.size(); i++) {
+            Node node = sequence.nodes.get(i);
+            if (node.alternatives == null || node.atomic) {
+                continue;
+            }
+
+            String nodePrefix = prefix + sequence.witness(0, i);
+            if (node.isBacktrackingUnbounded()
+                    && (node.containsUnboundedInside() || node.hasOverlappingAlternatives(pattern.flags()))) {
+                findings.add(new Finding(index, pattern.pattern(),
+                        node.containsUnboundedInside() ? Problem.NESTED_QUANTIFIER : Problem.OVERLAPPING_ALTERNATIVES,
+                        Complexity.EXPONENTIAL,
+                        nodePrefix, node.witnessOnce(), "", killer(pattern, searched, nodePrefix, node.witnessOnce(), "", node.chars)));
+                continue;
+            }
+
+            for (Sequence alternative : node.alternatives) {
+                findNestedQuantifiers(index, pattern, searched, alternative, nodePrefix, findings);
+            }
+        }
+    }
+
+    private static void findAmbiguousQuantifiers(int index, Pattern pattern, Sequence sequence, String prefix, List<Finding> findings) {
+        // count the longest run of backtracking quantifiers, each of which could consume what follows it
+        int bestCount = 0, bestStart = 0, bestEnd = 0;
+        int count = 0, start = -1;
+        CharSet run = null;
+
+        for (int i = 0; i < sequence.nodes.size(); i++) {
+            Node node = sequence.nodes.get(i);
+
+            if (node.containsUnbounded()) {
+                if (run != null && run.overlaps(node.firstChars())) {
+                    count++;
+                } else {
+                    count = 1;
+                    start = i;
+                }
+                run = node.chars;
+            } else if (run != null && !node.chars.isEmpty() && !run.overlaps(node.firstChars())) {
+                run = null;
+                count = 0;
+            } else if (run != null && (node.atomic || node.possessive)) {
+                run = null;
+                count = 0;
+            }
+
+            if (count > bestCount) {
+                bestCount = count;
+                bestStart = start;
+                bestEnd = i + 1;
+            }
+        }
+
+        if (bestCount >= 2) {
+            StringBuilder unit = new StringBuilder();
+            for (int i = bestStart; i < bestEnd; i++) {
+                Node node = sequence.nodes.get(i);
+                unit.append(node.witness());
+            }
+            String unitPrefix = prefix + sequence.witness(0, bestStart);
+            findings.add(new Finding(index, pattern.pattern(), Problem.AMBIGUOUS_QUANTIFIERS, Complexity.ofDegree(bestCount),
+                    unitPrefix, unit.toString(), "", killer(pattern, false, unitPrefix, unit.toString(), "", sequence.chars())));
+        }
+
+        for (int i = 0; i < sequence.nodes.size(); i++) {
+            Node node = sequence.nodes.get(i);
+            if (node.alternatives != null && !node.lookaround) {
+                for (Sequence alternative : node.alternatives) {
+                    findAmbiguousQuantifiers(index, pattern, alternative, prefix + sequence.witness(0, i), findings);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks a suffix that makes the whole match fail once the repeated part has been consumed, as that is what
+     * forces the backtracking. Characters of the repeated part are never picked, and neither is anything that would
+     * let the rest of the pattern match the input.
+     */
+    private static String killer(Pattern pattern, boolean searched, String prefix, String left, String right, CharSet chars) {
+        String fallback = null;
+        for (char c : "!#~;\n\u0000@%".toCharArray()) {
+            if (chars.contains(c)) {
+                continue;
+            }
+            String suffix = String.valueOf(c);
+            if (fallback == null) {
+                fallback = suffix;
+            }
+
+            StringBuilder input = new StringBuilder(prefix);
+            for (int i = 0; i < 4; i++) {
+                input.append(left);
+            }
+            for (int i = 0; i < 4; i++) {
+                input.append(right);
+            }
+            Matcher matcher = pattern.matcher(input.append(suffix));
+            if (!(searched ? matcher.find() : matcher.matches())) {
+                return suffix;
+            }
+        }
+        return fallback == null ? "\u0000" : fallback;
+    }
+
+
+    /* Results */
+
+    public enum Complexity {
+        LINEAR, QUADRATIC, POLYNOMIAL, EXPONENTIAL;
+
+        public Complexity max(Complexity other) {
+            return compareTo(other) >= 0 ? this : other;
+        }
+
+        static Complexity ofDegree(int degree) {
+            return degree <= 1 ? LINEAR : degree == 2 ? QUADRATIC : POLYNOMIAL;
+        }
+    }
+
+    public enum Problem {
+        /** An unbounded quantifier applied to something that itself contains an unbounded quantifier, e.g. {@code (a+)+} */
+        NESTED_QUANTIFIER,
+        /** An unbounded quantifier applied to alternatives that can match the same input, e.g. {@code (a|ab)*} */
+        OVERLAPPING_ALTERNATIVES,
+        /** Several unbounded quantifiers which can each consume the same input, e.g. {@code (.*),(.*)} */
+        AMBIGUOUS_QUANTIFIERS,
+        /** A capture group that can be re-matched by the same rule, shrinking the region only slightly per level */
+        RECURSIVE_DOWNSTRIPPING,
+        /** Nested groups, each of which gets rescanned at every level of nesting */
+        NESTED_GROUPS,
+        /** A delimiter pattern starting with an unbounded quantifier, so searching for it retries from every position */
+        UNANCHORED_DELIMITER
+    }
+
+    @Value
+    public static class Finding {
+        private final int rule;
+        private final String pattern;
+        private final Problem problem;
+        private final Complexity complexity;
+
+        private final String prefix;
+        private final String left;
+        private final String right;
+        private final String suffix;
+
+        /**
+         * @return an input of roughly {@code size} repetitions which triggers the worst case of this finding
+         */
+        public String adversarialInput(int size) {
+            StringBuilder input = new StringBuilder(prefix);
+            for (int i = 0; i < size; i++) {
+                input.append(left);
+            }
+            for (int i = 0; i < size; i++) {
+                input.append(right);
+            }
+            return input.append(suffix).toString();
+        }
+    }
+
+    @Value
+    public static class Report {
+        private final List<Finding> findings;
+        private final List<Complexity> complexities;
+
+        public Complexity worstCase() {
+            Complexity worst = Complexity.LINEAR;
+            for (Complexity complexity : complexities) {
+                worst = worst.max(complexity);
+            }
+            return worst;
+        }
+
+        /**
+         * @throws IllegalStateException describing every finding above the {@code limit}
+         */
+        public void verify(Complexity limit) {
+            StringBuilder message = new StringBuilder();
+            for (Finding finding : findings) {
+                if (finding.getComplexity().compareTo(limit) > 0) {
+                    message.append(String.format("%n  rule %d (%s): %s, %s, e.g. '%s'",
+                            finding.getRule(), finding.getPattern(), finding.getProblem(), finding.getComplexity(),
+                            finding.adversarialInput(8)));
+                }
+            }
+
+            if (message.length() > 0) {
+                throw new IllegalStateException("Grammar exceeds " + limit + " worst-case complexity:" + message);
+            }
+        }
+    }
+
+
+    /* Regex structure */
+
+    private static class Sequence {
+        private final List<Node> nodes = new ArrayList<>();
+        // the part of the regex this sequence was read from
+        private String source = "";
+
+        CharSet chars() {
+            CharSet chars = new CharSet();
+            for (Node node : nodes) {
+                chars.addAll(node.chars);
+            }
+            return chars;
+        }
+
+        CharSet firstChars() {
+            CharSet chars = new CharSet();
+            for (Node node : nodes) {
+                chars.addAll(node.chars);
+                if (node.min > 0 && !node.chars.isEmpty()) {
+                    break;
+                }
+            }
+            return chars;
+        }
+
+        String witness() {
+            return witness(0, nodes.size());
+        }
+
+        String witness(int from, int to) {
+            StringBuilder witness = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                witness.append(nodes.get(i).witness());
+            }
+            return witness.toString();
+        }
+    }
+
+    private static class Node {
+        private CharSet chars = new CharSet();
+        private String literal = "";
+        private List<Sequence> alternatives;
+        private boolean capturing;
+        private boolean atomic;
+        private boolean lookaround;
+        // the group a back-reference refers to
+        private Node reference;
+
+        private int min = 1;
+        private int max = 1;
+        private boolean possessive;
+
+        boolean isUnbounded() {
+            return max < 0;
+        }
+
+        boolean isBacktrackingUnbounded() {
+            return isUnbounded() && !possessive && !atomic && !lookaround;
+        }
+
+        boolean containsUnbounded() {
+            return isBacktrackingUnbounded() || containsUnboundedInside();
+        }
+
+        boolean containsUnboundedInside() {
+            if (alternatives == null || atomic || lookaround) {
+                return false;
+            }
+            for (Sequence alternative : alternatives) {
+                for (Node node : alternative.nodes) {
+                    if (node.containsUnbounded()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Alternatives are ambiguous under repetition when some input can be split into them in more than one way,
+         * e.g. {@code (\w|\d)} or {@code (a|b|ab)} - merely starting alike, as in {@code (a|ab)}, is fine.
+         * This is checked on the shortest input of every alternative, which should match neither another alternative
+         * nor a repetition of the others.
+         */
+        boolean hasOverlappingAlternatives(int flags) {
+            if (alternatives == null || alternatives.size() < 2) {
+                return false;
+            }
+            for (int i = 0; i < alternatives.size(); i++) {
+                String witness = alternatives.get(i).witness();
+                if (witness.isEmpty()) {
+                    continue;
+                }
+
+                StringBuilder others = new StringBuilder();
+                for (int j = 0; j < alternatives.size(); j++) {
+                    if (j != i) {
+                        others.append(others.length() == 0 ? "" : "|").append(alternatives.get(j).source);
+                    }
+                }
+
+                try {
+                    if (Pattern.compile("(?:" + others + ")+", flags).matcher(witness).matches()) {
+                        return true;
+                    }
+                } catch (PatternSyntaxException e) {
+                    // e.g. back-references to groups outside of the alternatives - fall back to comparing first chars
+                    for (int j = 0; j < alternatives.size(); j++) {
+                        if (j != i && alternatives.get(i).firstChars().overlaps(alternatives.get(j).firstChars())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        String witnessOnce() {
+            if (lookaround) {
+                return "";
+            }
+            if (reference != null) {
+                return reference.witness();
+            }
+            return alternatives != null ? alternatives.get(0).witness() : literal;
+        }
+
+        CharSet firstChars() {
+            if (alternatives == null) {
+                return chars;
+            }
+            CharSet first = new CharSet();
+            for (Sequence alternative : alternatives) {
+                first.addAll(alternative.firstChars());
+            }
+            return first;
+        }
+
+        /**
+         * @return the shortest input for this node, except that unbounded parts are repeated at least once
+         */
+        String witness() {
+            StringBuilder witness = new StringBuilder();
+            int repetitions = isUnbounded() ? Math.max(min, 1) : min;
+            for (int i = 0; i < repetitions; i++) {
+                witness.append(witnessOnce());
+            }
+            return witness.toString();
+        }
+    }
+
+    private static class RegexTree {
+        private final String regex;
+        private final boolean dotAll;
+        private int position = 0;
+        private final List<Node> groups = new ArrayList<>();
+        private final Map<String, Node> names = new HashMap<>();
+
+        private RegexTree(Pattern pattern) {
+            this.regex = pattern.pattern();
+            this.dotAll = (pattern.flags() & Pattern.DOTALL) != 0;
+        }
+
+        static Sequence parse(Pattern pattern) {
+            RegexTree tree = new RegexTree(pattern);
+            List<Sequence> alternatives = tree.alternatives();
+
+            if (alternatives.size() == 1) {
+                return alternatives.get(0);
+            }
+
+            Node node = new Node();
+            node.alternatives = alternatives;
+            node.chars = union(alternatives);
+            Sequence sequence = new Sequence();
+            sequence.nodes.add(node);
+            return sequence;
+        }
+
+        private List<Sequence> alternatives() {
+            List<Sequence> alternatives = new ArrayList<>();
+            alternatives.add(sequence());
+            while (position < regex.length() && regex.charAt(position) == '|') {
+                position++;
+                alternatives.add(sequence());
+            }
+            return alternatives;
+        }
+
+        private Sequence sequence() {
+            Sequence sequence = new Sequence();
+            int start = position;
+            while (position < regex.length() && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+                Node node = atom();
+                if (node != null) {
+                    quantifier(node);
+                    sequence.nodes.add(node);
+                }
+            }
+            sequence.source = regex.substring(start, Math.min(position, regex.length()));
+            return sequence;
+        }
+
+        private Node atom() {
+            char c = regex.charAt(position++);
+            Node node = new Node();
+
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    node.chars = characterClass();
+                    break;
+                case '.':
+                    node.chars = CharSet.any(dotAll);
+                    break;
+                case '^':
+                case '$':
+                    node.min = node.max = 1;
+                    return node;
+                case '\\':
+                    return escape();
+                default:
+                    node.chars.add(c);
+            }
+
+            node.literal = node.chars.witness();
+            return node;
+        }
+
+        private Node group() {
+            Node node = new Node();
+            node.capturing = true;
+
+            if (regex.startsWith("?", position)) {
+                node.capturing = false;
+                position++;
+                if (regex.startsWith("<", position) && !regex.startsWith("<=", position) && !regex.startsWith("<!", position)) {
+                    node.capturing = true;
+                    int end = regex.indexOf('>', position);
+                    names.put(regex.substring(position + 1, end), node);
+                    position = end + 1;
+                } else if (regex.startsWith(">", position)) {
+                    node.atomic = true;
+                    position++;
+                } else if (regex.startsWith("=", position) || regex.startsWith("!", position)) {
+                    node.lookaround = true;
+                    position++;
+                } else if (regex.startsWith("<=", position) || regex.startsWith("<!", position)) {
+                    node.lookaround = true;
+                    position += 2;
+                } else {
+                    // inline flags, either on their own - (?i) - or for a non-capturing group - (?i:...)
+                    while (position < regex.length() && regex.charAt(position) != ':' && regex.charAt(position) != ')') {
+                        position++;
+                    }
+                    if (position < regex.length() && regex.charAt(position++) == ')') {
+                        return null;
+                    }
+                }
+            }
+
+            if (node.capturing) {
+                groups.add(node);
+            }
+            node.alternatives = alternatives();
+            position++; // the closing ')'
+
+            if (node.lookaround) {
+                node.chars = new CharSet();
+            } else {
+                node.chars = union(node.alternatives);
+            }
+            return node;
+        }
+
+        private Node escape() {
+            Node node = new Node();
+            char c = regex.charAt(position++);
+
+            if ("bBAGzZ".indexOf(c) >= 0) {
+                return node;
+            }
+            if (c >= '1' && c <= '9' || c == 'k' && regex.startsWith("<", position)) {
+                // a back-reference could be anything, but repeats the group in the witness
+                if (c == 'k') {
+                    int end = regex.indexOf('>', position);
+                    node.reference = names.get(regex.substring(position + 1, end));
+                    position = end + 1;
+                } else if (c - '0' <= groups.size()) {
+                    node.reference = groups.get(c - '1');
+                }
+                if (node.reference != null && node.reference.alternatives == null) {
+                    // still open, i.e. referenced from within itself
+                    node.reference = null;
+                }
+                node.chars = CharSet.any(true);
+                return node;
+            }
+            if (c == 'Q') {
+                int end = regex.indexOf("\\E", position);
+                end = end < 0 ? regex.length() : end;
+                node.literal = regex.substring(position, end);
+                for (char q : node.literal.toCharArray()) {
+                    node.chars.add(q);
+                }
+                position = Math.min(regex.length(), end + 2);
+                return node;
+            }
+
+            node.chars = escaped(c);
+            node.literal = node.chars.witness();
+            return node;
+        }
+
+        private CharSet escaped(char c) {
+            CharSet chars = new CharSet();
+            switch (c) {
+                case 'd':
+                    chars.addRange('0', '9');
+                    return chars;
+                case 'w':
+                    chars.addRange('a', 'z');
+                    chars.addRange('A', 'Z');
+                    chars.addRange('0', '9');
+                    chars.add('_');
+                    return chars;
+                case 's':
+                    for (char s : " \t\n\u000B\f\r".toCharArray()) {
+                        chars.add(s);
+                    }
+                    return chars;
+                case 'D':
+                case 'W':
+                case 'S':
+                    return escaped(Character.toLowerCase(c)).complement();
+                case 'p':
+                case 'P':
+                    if (regex.startsWith("{", position)) {
+                        position = regex.indexOf('}', position) + 1;
+                    } else {
+                        position++;
+                    }
+                    return CharSet.any(true);
+                case 't':
+                    chars.add('\t');
+                    return chars;
+                case 'n':
+                    chars.add('\n');
+                    return chars;
+                case 'r':
+                    chars.add('\r');
+                    return chars;
+                case 'f':
+                    chars.add('\f');
+                    return chars;
+                case 'a':
+                    chars.add('\u0007');
+                    return chars;
+                case 'e':
+                    chars.add('\u001B');
+                    return chars;
+                case 'x':
+                case 'u':
+                    return hexadecimal(c == 'x' ? 2 : 4);
+                case 'c':
+                    position++;
+                    return CharSet.any(true);
+                case 'N':
+                    // a named character, \N{NAME}
+                    if (regex.startsWith("{", position) && regex.indexOf('}', position) > 0) {
+                        position = regex.indexOf('}', position) + 1;
+                    }
+                    return CharSet.any(true);
+                case '0':
+                    while (position < regex.length() && regex.charAt(position) >= '0' && regex.charAt(position) <= '7') {
+                        position++;
+                    }
+                    return CharSet.any(true);
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        // an escape not modelled here (e.g. \h, \R, \X) - assume it could match anything
+                        return CharSet.any(true);
+                    }
+                    chars.add(c);
+                    return chars;
+            }
+        }
+
+        /**
+         * Reads the digits of a hexadecimal escape, either {@code length} of them or any number in braces.
+         */
+        private CharSet hexadecimal(int length) {
+            int start = position;
+            int end = position + length;
+            if (regex.startsWith("{", position)) {
+                start = position + 1;
+                end = regex.indexOf('}', start);
+                position = end + 1;
+            } else {
+                position = end;
+            }
+
+            try {
+                int codePoint = Integer.parseInt(regex.substring(start, end), 16);
+                if (codePoint <= Character.MAX_VALUE) {
+                    return CharSet.of((char) codePoint);
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // not understood, handled below
+            }
+            position = Math.max(position, start);
+            return CharSet.any(true);
+        }
+
+        private CharSet characterClass() {
+            CharSet chars = new CharSet();
+            boolean negated = regex.startsWith("^", position);
+            if (negated) {
+                position++;
+            }
+
+            boolean first = true;
+            while (position < regex.length() && (first || regex.charAt(position) != ']')) {
+                first = false;
+                char c = regex.charAt(position++);
+
+                if (c == '[') {
+                    chars.addAll(characterClass());
+                    continue;
+                }
+                if (c == '&' && regex.startsWith("&", position)) {
+                    // intersections are approximated by unions, which can only over-report overlaps
+                    position++;
+                    continue;
+                }
+
+                CharSet single = c == '\\' ? escaped(regex.charAt(position++)) : CharSet.of(c);
+                if (single.isSingle() && regex.startsWith("-", position)
+                        && position + 1 < regex.length() && regex.charAt(position + 1) != ']') {
+                    position++;
+                    char to = regex.charAt(position++);
+                    if (to == '\\') {
+                        to = escaped(regex.charAt(position++)).witness().charAt(0);
+                    }
+                    chars.addRange(single.witness().charAt(0), to);
+                } else {
+                    chars.addAll(single);
+                }
+            }
+            position++; // the closing ']'
+
+            return negated ? chars.complement() : chars;
+        }
+
+        private void quantifier(Node node) {
+            if (position >= regex.length()) {
+                return;
+            }
+
+            char c = regex.charAt(position);
+            if (c == '*') {
+                node.min = 0;
+                node.max = -1;
+            } else if (c == '+') {
+                node.min = 1;
+                node.max = -1;
+            } else if (c == '?') {
+                node.min = 0;
+                node.max = 1;
+            } else if (c == '{') {
+                int end = regex.indexOf('}', position);
+                if (end < 0 || !regex.substring(position + 1, end).matches("\\s*\\d+\\s*(,\\s*\\d*\\s*)?")) {
+                    // not a quantifier
+                    return;
+                }
+                String[] bounds = regex.substring(position + 1, end).split(",", -1);
+                node.min = Integer.parseInt(bounds[0].trim());
+                node.max = bounds.length == 1 ? node.min
+                        : bounds[1].trim().isEmpty() ? -1
+                        : Integer.parseInt(bounds[1].trim());
+                position = end;
+            } else {
+                return;
+            }
+            position++;
+
+            if (position < regex.length() && regex.charAt(position) == '+') {
+                node.possessive = true;
+                position++;
+            } else if (position < regex.length() && regex.charAt(position) == '?') {
+                position++;
+            }
+        }
+
+        private static CharSet union(List<Sequence> alternatives) {
+            CharSet chars = new CharSet();
+            for (Sequence alternative : alternatives) {
+                chars.addAll(alternative.chars());
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * An approximation of a set of characters: exact within ASCII, plus a single flag for everything else.
+     */
+    private static class CharSet {
+        private final BitSet ascii = new BitSet(128);
+        private boolean other = false;
+
+        static CharSet of(char c) {
+            CharSet chars = new CharSet();
+            chars.add(c);
+            return chars;
+        }
+
+        static CharSet any(boolean includingLineTerminators) {
+            CharSet chars = new CharSet();
+            chars.addRange('\0', '\u007F');
+            chars.other = true;
+            if (!includingLineTerminators) {
+                chars.ascii.clear('\n');
+                chars.ascii.clear('\r');
+            }
+            return chars;
+        }
+
+        void add(char c) {
+            if (c < 128) {
+                ascii.set(c);
+            } else {
+                other = true;
+            }
+        }
+
+        void addRange(char from, char to) {
+            if (from < 128) {
+                ascii.set(from, Math.min(to, '\u007F') + 1);
+            }
+            if (to >= 128) {
+                other = true;
+            }
+        }
+
+        void addAll(CharSet chars) {
+            ascii.or(chars.ascii);
+            other |= chars.other;
+        }
+
+        CharSet complement() {
+            CharSet complement = new CharSet();
+            complement.ascii.set(0, 128);
+            complement.ascii.andNot(ascii);
+            complement.other = true;
+            return complement;
+        }
+
+        boolean contains(char c) {
+            return c < 128 ? ascii.get(c) : other;
+        }
+
+        boolean overlaps(CharSet chars) {
+            return ascii.intersects(chars.ascii) || (other && chars.other);
+        }
+
+        boolean isEmpty() {
+            return ascii.isEmpty() && !other;
+        }
+
+        boolean isSingle() {
+            return ascii.cardinality() == 1 && !other;
+        }
+
+        String witness() {
+            for (char c : "a0 ".toCharArray()) {
+                if (ascii.get(c)) {
+                    return String.valueOf(c);
+                }
+            }
+            int first = ascii.nextSetBit(' ');
+            if (first < 0) {
+                first = ascii.nextSetBit(0);
+            }
+            return first >= 0 ? String.valueOf((char) first) : other ? "\u00e9" : "";
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-character bracket pairs, quote characters and an escape character,
+ * scanned together in one linear pass over the input.
+ * <p>
+ * Brackets are given as consecutive opening/closing pairs, e.g. {@code "()[]{}"}.
+ * Brackets inside quotes, as well as any character following the escape character, are ignored.
+ */
+@Value
+public class Delimiters {
+
+    public static final char NO_ESCAPE = '\0';
+
+    public static final Delimiters DEFAULT = delimiters("()[]{}", "'\"");
+
+    private final String brackets;
+    private final String quotes;
+    private final char escape;
+
+    public Delimiters(String brackets, String quotes, char escape) {
+        if (brackets.length() % 2 != 0) {
+            throw new IllegalArgumentException("Brackets must be given as opening/closing pairs: " + brackets);
+        }
+        for (int i = 0; i < brackets.length(); i++) {
+            char c = brackets.charAt(i);
+            if (brackets.indexOf(c) != i || quotes.indexOf(c) >= 0 || c == escape) {
+                throw new IllegalArgumentException("Delimiter characters must be distinct: '" + c + "'");
+            }
+        }
+
+        this.brackets = brackets;
+        this.quotes = quotes;
+        this.escape = escape;
+    }
+
+
+    /* Functionality */
+
+    public List<Group> findTopLevelGroups(CharSequence input) {
+        return findTopLevelGroups(input, 0, input.length());
+    }
+
+    public List<Group> findTopLevelGroups(CharSequence input, int start, int end) {
+        List<Group> groups = new ArrayList<>();
+        scan(input, start, end, new Visitor() {
+            @Override
+            public void group(char opening, int groupStart, int groupEnd) {
+                groups.add(new Group(opening, groupStart, groupEnd));
+            }
+        });
+        return groups;
+    }
+
+    /**
+     * Walks the region once, validating that brackets are properly nested and quotes are terminated.
+     *
+     * @throws ParseException if the region is unbalanced
+     */
+    public void scan(CharSequence input, int start, int end, Visitor visitor) {
+        char[] expected = new char[8];
+        int depth = 0;
+        char quote = 0;
+        int groupStart = -1;
+
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+
+            if (quote != 0) {
+                if (isEscape(c)) {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+
+            if (depth == 0) {
+                int next = visitor.topLevel(i);
+                if (next > i) {
+                    i = next - 1;
+                    continue;
+                }
+            }
+
+            if (isEscape(c)) {
+                i++;
+                continue;
+            }
+
+            if (quotes.indexOf(c) >= 0) {
+                quote = c;
+                continue;
+            }
+
+            int b = brackets.indexOf(c);
+            if (b < 0) {
+                continue;
+            }
+
+            if (b % 2 == 0) {
+                if (depth == expected.length) {
+                    char[] grown = new char[depth * 2];
+                    System.arraycopy(expected, 0, grown, 0, depth);
+                    expected = grown;
+                }
+                if (depth == 0) {
+                    groupStart = i;
+                }
+                expected[depth++] = brackets.charAt(b + 1);
+            } else {
+                if (depth == 0 || expected[depth - 1] != c) {
+                    throw new ParseException("Unbalanced expression!");
+                }
+                if (--depth == 0) {
+                    visitor.group(brackets.charAt(b - 1), groupStart, i + 1);
+                }
+            }
+        }
+
+        if (depth != 0 || quote != 0) {
+            throw new ParseException("Unbalanced expression!");
+        }
+    }
+
+    private boolean isEscape(char c) {
+        return escape != NO_ESCAPE && c == escape;
+    }
+
+    public interface Visitor {
+        /**
+         * Called for every position outside of any group or quote.
+         *
+         * @return the position to continue scanning from; anything not past {@code index} resumes normally
+         */
+        default int topLevel(int index) {
+            return index;
+        }
+
+        default void group(char opening, int start, int end) {
+        }
+    }
+
+    @Value
+    public static class Group {
+        private final char opening;
+        private final int start;
+        private final int end;
+    }
+
+
+    /* Static constructors */
+
+    public static Delimiters delimiters(String brackets) {
+        return new Delimiters(brackets, "", NO_ESCAPE);
+    }
+
+    public static Delimiters delimiters(String brackets, String quotes) {
+        return new Delimiters(brackets, quotes, '\\');
+    }
+
+    public static Delimiters delimiters(String brackets, String quotes, char escape) {
+        return new Delimiters(brackets, quotes, escape);
+    }
+}
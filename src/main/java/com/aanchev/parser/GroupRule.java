@@ -14,6 +14,7 @@
 package com.aanchev.parser;
 
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -26,6 +27,7 @@ import java.util.regex.Pattern;
 
 import static com.aanchev.parser.LazyList.lazyList;
 import static java.util.Collections.emptyList;
+import static lombok.AccessLevel.PACKAGE;
 import static lombok.AccessLevel.PROTECTED;
 
 @AllArgsConstructor(access = PROTECTED)
@@ -33,7 +35,9 @@ public class GroupRule<O> implements Rule<O> {
 
     private static Pattern PATTERN_ANYTHING = Pattern.compile(".*+", Pattern.DOTALL);
 
+    @Getter(PACKAGE)
     private Pattern opening;
+    @Getter(PACKAGE)
     private Pattern closing;
     private Handler<O> handler;
 
@@ -44,22 +48,13 @@ public class GroupRule<O> implements Rule<O> {
 
     @Override
     public O handle(MatchResult match, List<O> nodes, Parser parser) {
-        CharSequence input = match.group();
+        CharSequence input = Tokens.input(match);
 
         // Try to parse the groups, but failures should just make this rule not match so other rules can have a go
         try {
             List<Pair<Integer, Integer>> groups = findTopLevelGroups(input, opening, closing);
 
-            // If no groups found, this rule should not match
-            if (groups.size() == 0) {
-                return null;
-            }
-
-            // If only one group was found, but it was the entire input, this rule should not match
-            if (groups.size() == 1
-                    && groups.get(0).getKey() == 0
-                    && groups.get(0).getValue() == input.length()
-            ) {
+            if (!isApplicable(groups, input)) {
                 return null;
             }
 
@@ -70,6 +65,41 @@ public class GroupRule<O> implements Rule<O> {
         }
     }
 
+    @Override
+    public boolean accepts(MatchResult match, List<Boolean> children, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        // The groups are the children of this rule, so it accepts exactly when they all are valid
+        try {
+            List<Pair<Integer, Integer>> groups = findTopLevelGroups(input, opening, closing);
+
+            if (!isApplicable(groups, input)) {
+                return false;
+            }
+
+            for (Pair<Integer, Integer> group : groups) {
+                if (!parser.recognize(input, group.getKey(), group.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isApplicable(List<Pair<Integer, Integer>> groups, CharSequence input) {
+        // If no groups found, this rule should not match
+        if (groups.size() == 0) {
+            return false;
+        }
+
+        // If only one group was found, but it was the entire input, this rule should not match
+        return groups.size() != 1
+                || groups.get(0).getKey() != 0
+                || groups.get(0).getValue() != input.length();
+    }
+
 
     /* Functionality */
 
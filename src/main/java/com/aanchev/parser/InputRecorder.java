@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Samples parser inputs to a file, to be replayed by a {@link WarmUp} on the next start.
+ * <p>
+ * Each sample is stored as its length in bytes followed by its UTF-8 encoding.
+ * Recording stops once {@code maxSamples} have been written by this recorder, and each one is flushed as it is written.
+ * When opened, the file is trimmed to its newest {@code maxSamples} samples, so it never holds more than twice as many.
+ */
+@Slf4j
+public class InputRecorder implements Closeable {
+
+    private final DataOutputStream out;
+    private final double rate;
+    private final int maxSamples;
+    private volatile int samples;
+
+    protected InputRecorder(OutputStream out, double rate, int maxSamples) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.rate = rate;
+        this.maxSamples = maxSamples;
+    }
+
+
+    /* Functionality */
+
+    public void record(CharSequence input) {
+        if (samples >= maxSamples || ThreadLocalRandom.current().nextDouble() >= rate) {
+            return;
+        }
+
+        byte[] bytes = input.toString().getBytes(UTF_8);
+        synchronized (out) {
+            if (samples >= maxSamples) {
+                return;
+            }
+            try {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                // at most maxSamples flushes, and a crash loses no samples
+                out.flush();
+                samples++;
+            } catch (IOException e) {
+                // sampling is best effort and must never fail the parse itself
+                log.warn("Unable to record a parser input, recording stopped", e);
+                samples = maxSamples;
+            }
+        }
+    }
+
+    /**
+     * Records the whole inputs passed to the parser.
+     */
+    public Parser wrap(Parser parser) {
+        return new Parser() {
+            @Override
+            public <E> E parse(CharSequence input) {
+                record(input);
+                return parser.parse(input);
+            }
+
+            @Override
+            public <E> E parse(CharSequence input, int start, int end) {
+                return parser.parse(input, start, end);
+            }
+
+            @Override
+            public boolean recognize(CharSequence input) {
+                record(input);
+                return parser.recognize(input);
+            }
+
+            @Override
+            public boolean recognize(CharSequence input, int start, int end) {
+                return parser.recognize(input, start, end);
+            }
+        };
+    }
+
+    public int samples() {
+        synchronized (out) {
+            return samples;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (out) {
+            out.close();
+        }
+    }
+
+
+    /* Static constructors */
+
+    /**
+     * Appends to the file, sampling each input with probability {@code rate}.
+     */
+    public static InputRecorder open(Path file, double rate, int maxSamples) throws IOException {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Invalid sampling rate: " + rate);
+        }
+        if (Files.exists(file)) {
+            trim(file, maxSamples);
+        }
+        return new InputRecorder(Files.newOutputStream(file, CREATE, APPEND), rate, maxSamples);
+    }
+
+    /**
+     * Keeps the newest samples only, also dropping an incomplete one that would corrupt the samples appended after it.
+     */
+    private static void trim(Path file, int maxSamples) throws IOException {
+        List<String> samples = read(file);
+        samples = samples.subList(Math.max(0, samples.size() - maxSamples), samples.size());
+
+        Path trimmed = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(trimmed)))) {
+            for (String sample : samples) {
+                byte[] bytes = sample.getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(trimmed);
+            throw e;
+        }
+        Files.move(trimmed, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the recorded samples, ignoring a sample left incomplete by a crash.
+     */
+    public static List<String> read(Path file) throws IOException {
+        List<String> samples = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Corrupted sample file: " + file);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                samples.add(new String(bytes, UTF_8));
+            }
+        } catch (EOFException e) {
+            return samples;
+        }
+    }
+}
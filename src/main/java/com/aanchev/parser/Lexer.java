@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.copyOf;
+import static lombok.AccessLevel.PACKAGE;
+
+/**
+ * Optional tokenizer stage for {@link RegexDownstrippingParser}.
+ * <p>
+ * The input is split once into tokens, each denoted by a single kind character, and the rules are then matched
+ * against the sequence of kinds (see {@link Tokens}). Token regexes are tried in order, first match wins.
+ * They must not match the empty string and must not use numbered back-references.
+ */
+public class Lexer {
+
+    @Getter(PACKAGE)
+    private final List<TokenRule> rules;
+    private final Pattern pattern;
+    private final int[] groups;
+
+    protected Lexer(List<TokenRule> rules) {
+        this.rules = rules;
+        this.groups = new int[rules.size()];
+
+        // all token rules are combined into a single alternation, so each token costs one match attempt
+        StringBuilder combined = new StringBuilder("\\G(?:");
+        int group = 1;
+        for (int i = 0; i < rules.size(); i++) {
+            Pattern rule = rules.get(i).getPattern();
+            if (i > 0) {
+                combined.append('|');
+            }
+            combined.append('(').append(rule.pattern()).append(')');
+
+            groups[i] = group;
+            group += 1 + rule.matcher("").groupCount();
+        }
+        this.pattern = Pattern.compile(combined.append(')').toString());
+    }
+
+    public Tokens tokenize(CharSequence input) {
+        char[] kinds = new char[16];
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int size = 0;
+
+        Matcher matcher = pattern.matcher(input);
+        int position = 0;
+        while (position < input.length()) {
+            if (!matcher.find() || matcher.start() != position || matcher.end() == position) {
+                throw new ParseException("Unable to tokenize the input. " +
+                        String.format("No token rule matched at %d ('%s')",
+                                position, input.subSequence(position, Math.min(position + 16, input.length()))));
+            }
+
+            TokenRule rule = ruleOf(matcher);
+            position = matcher.end();
+            if (rule.isSkip()) {
+                continue;
+            }
+
+            if (size == kinds.length) {
+                kinds = copyOf(kinds, size * 2);
+                starts = copyOf(starts, size * 2);
+                ends = copyOf(ends, size * 2);
+            }
+            kinds[size] = rule.getKind();
+            starts[size] = matcher.start();
+            ends[size] = matcher.end();
+            size++;
+        }
+
+        return new Tokens(input, copyOf(kinds, size), copyOf(starts, size), copyOf(ends, size));
+    }
+
+    private TokenRule ruleOf(Matcher matcher) {
+        for (int i = 0; i < groups.length; i++) {
+            if (matcher.start(groups[i]) != -1) {
+                return rules.get(i);
+            }
+        }
+        throw new IllegalStateException("No token rule group participated in the match");
+    }
+
+    @Value
+    public static class TokenRule {
+        private final char kind;
+        private final Pattern pattern;
+        private final boolean skip;
+    }
+
+
+    /* Static constructors */
+
+    public static Lexer lexer(List<TokenRule> rules) {
+        return new Lexer(rules);
+    }
+
+    public static TokenRule token(char kind, String regex) {
+        return new TokenRule(kind, Pattern.compile(regex), false);
+    }
+
+    public static TokenRule skip(String regex) {
+        return new TokenRule('\0', Pattern.compile(regex), true);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import com.aanchev.parser.Delimiters.Visitor;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.aanchev.parser.LazyList.lazyList;
+import static lombok.AccessLevel.PACKAGE;
+import static lombok.AccessLevel.PROTECTED;
+
+/**
+ * Splits the matched region (or its first capture group, when there is one) into elements on a separator,
+ * in a single pass which skips separators nested in groups or quotes.
+ * The elements are parsed lazily, each one independently, so long lists need neither recursion nor backtracking.
+ */
+@AllArgsConstructor(access = PROTECTED)
+public class ListRule<O> implements Rule<O> {
+
+    private static Pattern PATTERN_ANYTHING = Pattern.compile(".*+", Pattern.DOTALL);
+
+    private Pattern pattern;
+    @Getter(PACKAGE)
+    private Pattern separator;
+    @Getter(PACKAGE)
+    private Delimiters delimiters;
+    @Getter(PACKAGE)
+    private int min;
+    @Getter(PACKAGE)
+    private int max;
+    private Handler<O> handler;
+
+    @Override
+    public Pattern pattern() {
+        return pattern;
+    }
+
+    @Override
+    public int[] children() {
+        // the elements are the children, the capture group just delimits them
+        return new int[0];
+    }
+
+    @Override
+    public O handle(MatchResult match, List<O> nodes, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        // Unbalanced input should just make this rule not match so other rules can have a go
+        try {
+            int[] elements = split(match, input);
+            if (elements == null) {
+                return null;
+            }
+
+            return handler.handle(match, lazyList(elements.length / 2,
+                    i -> parser.parse(input, elements[2 * i], elements[2 * i + 1])), parser);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean accepts(MatchResult match, List<Boolean> children, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        try {
+            int[] elements = split(match, input);
+            if (elements == null) {
+                return false;
+            }
+
+            for (int i = 0; i < elements.length; i += 2) {
+                if (!parser.recognize(input, elements[i], elements[i + 1])) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the start and end offsets of the elements, one pair after another,
+     * or null if this rule should not match
+     */
+    private int[] split(MatchResult match, CharSequence input) {
+        int start = 0;
+        int end = input.length();
+        if (match.groupCount() > 0 && match.start(1) != -1) {
+            start = Tokens.inputStart(match, 1);
+            end = Tokens.inputEnd(match, 1);
+        }
+
+        int[] elements = new int[0];
+        if (start < end) {
+            Splitter splitter = new Splitter(input, start, end);
+            delimiters.scan(input, start, end, splitter);
+            elements = splitter.finish();
+        }
+
+        int count = elements.length / 2;
+        if (count < min || count > max) {
+            return null;
+        }
+
+        // A single element spanning the whole input would just be handed back to this rule
+        if (count == 1 && elements[0] == 0 && elements[1] == input.length()) {
+            return null;
+        }
+
+        return elements;
+    }
+
+    private class Splitter implements Visitor {
+        private final Matcher matcher;
+        private final int end;
+        private int[] offsets = new int[16];
+        private int size;
+        private int elementStart;
+
+        Splitter(CharSequence input, int start, int end) {
+            this.matcher = separator.matcher(input);
+            this.end = end;
+            this.elementStart = start;
+        }
+
+        @Override
+        public int topLevel(int index) {
+            if (!matcher.region(index, end).lookingAt() || matcher.end() == index) {
+                return index;
+            }
+            add(elementStart, index);
+            elementStart = matcher.end();
+            return elementStart;
+        }
+
+        int[] finish() {
+            add(elementStart, end);
+            return Arrays.copyOf(offsets, size);
+        }
+
+        private void add(int start, int end) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = start;
+            offsets[size++] = end;
+        }
+    }
+
+
+    /* Static constructors */
+
+    public static <O> Rule<O> listRule(String separatorRegex, Function<MatchResult, O> handler) {
+        return listRule(separatorRegex, (match, nodes, parser) -> handler.apply(match));
+    }
+
+    public static <O> Rule<O> listRule(String separatorRegex, BiFunction<MatchResult, List<O>, O> handler) {
+        return listRule(separatorRegex, (match, nodes, parser) -> handler.apply(match, nodes));
+    }
+
+    public static <O> Rule<O> listRule(String separatorRegex, Handler<O> handler) {
+        return listRule(PATTERN_ANYTHING, Pattern.compile(separatorRegex), Delimiters.DEFAULT, 1, Integer.MAX_VALUE, handler);
+    }
+
+    public static <O> Rule<O> listRule(String regex, String separatorRegex, BiFunction<MatchResult, List<O>, O> handler) {
+        return listRule(regex, separatorRegex, (match, nodes, parser) -> handler.apply(match, nodes));
+    }
+
+    /**
+     * Matches lists of any length, including empty ones (when the capture group of {@code regex} is empty).
+     */
+    public static <O> Rule<O> listRule(String regex, String separatorRegex, Handler<O> handler) {
+        return listRule(regex, separatorRegex, 0, Integer.MAX_VALUE, handler);
+    }
+
+    public static <O> Rule<O> listRule(String regex, String separatorRegex, int min, int max, BiFunction<MatchResult, List<O>, O> handler) {
+        return listRule(regex, separatorRegex, min, max, (match, nodes, parser) -> handler.apply(match, nodes));
+    }
+
+    public static <O> Rule<O> listRule(String regex, String separatorRegex, int min, int max, Handler<O> handler) {
+        return listRule(Pattern.compile(regex), Pattern.compile(separatorRegex), Delimiters.DEFAULT, min, max, handler);
+    }
+
+    public static <O> Rule<O> listRule(Pattern pattern, Pattern separator, Delimiters delimiters, int min, int max, Handler<O> handler) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid cardinality: " + min + ".." + max);
+        }
+        return new ListRule<>(pattern, separator, delimiters, min, max, handler);
+    }
+}
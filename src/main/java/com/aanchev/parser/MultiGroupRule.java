@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import com.aanchev.parser.Delimiters.Group;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import static com.aanchev.parser.Delimiters.delimiters;
+import static com.aanchev.parser.LazyList.lazyList;
+import static lombok.AccessLevel.PACKAGE;
+import static lombok.AccessLevel.PROTECTED;
+
+/**
+ * Like {@link GroupRule}, but finds the top-level groups of several bracket kinds at once,
+ * ignoring brackets inside quotes, in a single pass over the input.
+ */
+@AllArgsConstructor(access = PROTECTED)
+public class MultiGroupRule<O> implements Rule<O> {
+
+    private static Pattern PATTERN_ANYTHING = Pattern.compile(".*+", Pattern.DOTALL);
+
+    @Getter(PACKAGE)
+    private Delimiters delimiters;
+    private GroupHandler<O> handler;
+
+    @Override
+    public Pattern pattern() {
+        return PATTERN_ANYTHING;
+    }
+
+    @Override
+    public O handle(MatchResult match, List<O> nodes, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        // Unbalanced input should just make this rule not match so other rules can have a go
+        try {
+            List<Group> groups = delimiters.findTopLevelGroups(input);
+
+            if (!isApplicable(groups, input)) {
+                return null;
+            }
+
+            return handler.handle(match, groups, lazyList(groups.size(),
+                    i -> parser.parse(input, groups.get(i).getStart(), groups.get(i).getEnd())), parser);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean accepts(MatchResult match, List<Boolean> children, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        // The groups are the children of this rule, so it accepts exactly when they all are valid
+        try {
+            List<Group> groups = delimiters.findTopLevelGroups(input);
+
+            if (!isApplicable(groups, input)) {
+                return false;
+            }
+
+            for (Group group : groups) {
+                if (!parser.recognize(input, group.getStart(), group.getEnd())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isApplicable(List<Group> groups, CharSequence input) {
+        // If no groups found, this rule should not match
+        if (groups.size() == 0) {
+            return false;
+        }
+
+        // If only one group was found, but it was the entire input, this rule should not match
+        return groups.size() != 1
+                || groups.get(0).getStart() != 0
+                || groups.get(0).getEnd() != input.length();
+    }
+
+    @FunctionalInterface
+    public interface GroupHandler<O> {
+        O handle(MatchResult match, List<Group> groups, List<O> nodes, Parser parser);
+    }
+
+
+    /* Static constructors */
+
+    public static <O> Rule<O> multiGroupRule(String brackets, String quotes, Function<MatchResult, O> handler) {
+        return multiGroupRule(delimiters(brackets, quotes), (match, groups, nodes, parser) -> handler.apply(match));
+    }
+
+    public static <O> Rule<O> multiGroupRule(String brackets, String quotes, BiFunction<MatchResult, List<O>, O> handler) {
+        return multiGroupRule(delimiters(brackets, quotes), (match, groups, nodes, parser) -> handler.apply(match, nodes));
+    }
+
+    public static <O> Rule<O> multiGroupRule(String brackets, String quotes, Handler<O> handler) {
+        return multiGroupRule(delimiters(brackets, quotes), (match, groups, nodes, parser) -> handler.handle(match, nodes, parser));
+    }
+
+    public static <O> Rule<O> multiGroupRule(String brackets, String quotes, GroupHandler<O> handler) {
+        return multiGroupRule(delimiters(brackets, quotes), handler);
+    }
+
+    public static <O> Rule<O> multiGroupRule(Delimiters delimiters, GroupHandler<O> handler) {
+        return new MultiGroupRule<>(delimiters, handler);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.aanchev.parser.Tokens.toSource;
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.unmodifiableList;
+import static lombok.AccessLevel.PACKAGE;
+import static lombok.AccessLevel.PROTECTED;
+
+/**
+ * Parses operator expressions with a single precedence-climbing (Pratt) pass over an operator table,
+ * instead of downstripping with one {@code (.*)op(.*)} rule per operator.
+ * <p>
+ * Operators are only recognised outside of brackets and quotes. The text between operators is delegated back to the
+ * {@link Parser}, as are bracketed sub-expressions, so a rule that strips the brackets is still needed.
+ * Each operator handler receives the match of the operator symbol and its operands, which are trimmed of surrounding
+ * whitespace and parsed before it. Evaluation does not recurse, so chains of left-associative or postfix operators can
+ * be arbitrarily long; chains of right-associative or prefix operators recurse once per operator while being read.
+ */
+@AllArgsConstructor(access = PROTECTED)
+public class OperatorRule<O> implements Rule<O> {
+
+    private static Pattern PATTERN_ANYTHING = Pattern.compile(".*+", Pattern.DOTALL);
+
+    @Getter(PACKAGE)
+    private Delimiters delimiters;
+    @Getter(PACKAGE)
+    private List<Operator<O>> operators;
+
+    @Override
+    public Pattern pattern() {
+        return PATTERN_ANYTHING;
+    }
+
+    @Override
+    public O handle(MatchResult match, List<O> nodes, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        // Failures to make sense of the expression should just make this rule not match so other rules can have a go
+        try {
+            Scan tokens = tokenize(input);
+
+            // If there are no operators at the top level, this is not an expression
+            if (!tokens.hasOperators) {
+                return null;
+            }
+
+            Node<O> expression = new Expression(input, tokens).parse();
+            return evaluate(expression, input, parser);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean accepts(MatchResult match, List<Boolean> children, Parser parser) {
+        CharSequence input = Tokens.input(match);
+
+        // The expression is well-formed by now, so it is accepted when all of its operands are
+        try {
+            Scan tokens = tokenize(input);
+
+            if (!tokens.hasOperators) {
+                return false;
+            }
+
+            new Expression(input, tokens).parse();
+            for (int i = 0; i < tokens.size; i++) {
+                if (!tokens.operators[i] && !parser.recognize(input, tokens.starts[i], tokens.ends[i])) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+
+    /* Functionality */
+
+    private Scan tokenize(CharSequence input) {
+        Scan tokens = new Scan();
+        Matcher[] matchers = new Matcher[operators.size()];
+        for (int i = 0; i < matchers.length; i++) {
+            matchers[i] = operators.get(i).getPattern().matcher(input);
+        }
+
+        int[] operandStart = {0};
+        delimiters.scan(input, 0, input.length(), new Delimiters.Visitor() {
+            @Override
+            public int topLevel(int index) {
+                // the longest operator symbol wins, so that e.g. '<=' is not read as '<'
+                int end = index;
+                for (Matcher matcher : matchers) {
+                    if (matcher.region(index, input.length()).lookingAt() && matcher.end() > end) {
+                        end = matcher.end();
+                    }
+                }
+
+                if (end == index) {
+                    return index;
+                }
+
+                tokens.addOperand(input, operandStart[0], index);
+                tokens.add(true, index, end);
+                operandStart[0] = end;
+                return end;
+            }
+        });
+        tokens.addOperand(input, operandStart[0], input.length());
+
+        return tokens;
+    }
+
+    /**
+     * Evaluates the tree bottom-up with explicit stacks, so long chains of operators do not overflow the call stack.
+     */
+    private O evaluate(Node<O> root, CharSequence input, Parser parser) {
+        // post-order: the operands of every operator come before it
+        List<Node<O>> order = new ArrayList<>();
+        List<Node<O>> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node<O> node = pending.remove(pending.size() - 1);
+            order.add(node);
+            pending.addAll(Arrays.asList(node.operands));
+        }
+        Collections.reverse(order);
+
+        List<O> values = new ArrayList<>();
+        for (Node<O> node : order) {
+            if (node.operator == null) {
+                values.add(parser.parse(input, node.start, node.end));
+                continue;
+            }
+
+            Matcher matcher = node.operator.getPattern().matcher(input).region(node.start, node.end);
+            if (!matcher.matches()) {
+                throw new IllegalStateException("Operator no longer matches its symbol");
+            }
+
+            List<O> operands = values.subList(values.size() - node.operands.length, values.size());
+            O value = node.operator.getHandler().handle(toSource(input, matcher.toMatchResult()),
+                    new ArrayList<>(operands), parser);
+            operands.clear();
+            values.add(value);
+        }
+
+        return values.get(0);
+    }
+
+    private class Expression {
+        private final CharSequence input;
+        private final Scan tokens;
+        private int position = 0;
+
+        Expression(CharSequence input, Scan tokens) {
+            this.input = input;
+            this.tokens = tokens;
+        }
+
+        Node<O> parse() {
+            Node<O> expression = parse(Integer.MIN_VALUE);
+            if (position < tokens.size) {
+                throw new ParseException("Unexpected operator at " + tokens.starts[position]);
+            }
+            return expression;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node<O> parse(int minPrecedence) {
+            if (position >= tokens.size) {
+                throw new ParseException("Missing operand at the end of the expression");
+            }
+
+            Node<O> left;
+            int start = tokens.starts[position];
+            int end = tokens.ends[position];
+
+            if (!tokens.operators[position]) {
+                left = new Node<>(null, start, end, new Node[0]);
+                position++;
+            } else {
+                Operator<O> prefix = find(Fixity.PREFIX, start, end);
+                if (prefix == null) {
+                    throw new ParseException("Missing operand before " + start);
+                }
+                position++;
+                left = new Node<>(prefix, start, end, new Node[]{parse(prefix.getPrecedence())});
+            }
+
+            while (position < tokens.size) {
+                start = tokens.starts[position];
+                end = tokens.ends[position];
+
+                if (!tokens.operators[position]) {
+                    throw new ParseException("Missing operator before " + start);
+                }
+
+                Operator<O> operator = find(Fixity.INFIX, start, end);
+                if (operator == null) {
+                    operator = find(Fixity.POSTFIX, start, end);
+                }
+                if (operator == null) {
+                    throw new ParseException("Unexpected operator at " + start);
+                }
+                if (operator.getPrecedence() < minPrecedence) {
+                    break;
+                }
+
+                position++;
+                if (operator.getFixity() == Fixity.POSTFIX) {
+                    left = new Node<>(operator, start, end, new Node[]{left});
+                } else {
+                    int rightPrecedence = operator.getAssociativity() == Associativity.LEFT
+                            ? operator.getPrecedence() + 1
+                            : operator.getPrecedence();
+                    left = new Node<>(operator, start, end, new Node[]{left, parse(rightPrecedence)});
+                }
+            }
+
+            return left;
+        }
+
+        private Operator<O> find(Fixity fixity, int start, int end) {
+            for (Operator<O> operator : operators) {
+                if (operator.getFixity() == fixity
+                        && operator.getPattern().matcher(input).region(start, end).matches()) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Scan {
+        private boolean[] operators = new boolean[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int size = 0;
+        private boolean hasOperators = false;
+
+        void addOperand(CharSequence input, int start, int end) {
+            while (start < end && Character.isWhitespace(input.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(input.charAt(end - 1))) {
+                end--;
+            }
+
+            // blank stretches (e.g. before a prefix operator) are not operands
+            if (start < end) {
+                add(false, start, end);
+            }
+        }
+
+        void add(boolean operator, int start, int end) {
+            if (size == starts.length) {
+                operators = copyOf(operators, size * 2);
+                starts = copyOf(starts, size * 2);
+                ends = copyOf(ends, size * 2);
+            }
+            operators[size] = operator;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+            hasOperators |= operator;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Node<O> {
+        private final Operator<O> operator;
+        private final int start;
+        private final int end;
+        private final Node<O>[] operands;
+    }
+
+    public enum Fixity {
+        PREFIX, INFIX, POSTFIX
+    }
+
+    public enum Associativity {
+        LEFT, RIGHT
+    }
+
+    @Value
+    public static class Operator<O> {
+        private final Pattern pattern;
+        private final Fixity fixity;
+        private final int precedence;
+        private final Associativity associativity;
+        private final Handler<O> handler;
+    }
+
+
+    /* Static constructors */
+
+    public static <O> Rule<O> operatorRule(List<Operator<O>> operators) {
+        return operatorRule(Delimiters.DEFAULT, operators);
+    }
+
+    public static <O> Rule<O> operatorRule(Delimiters delimiters, List<Operator<O>> operators) {
+        return new OperatorRule<>(delimiters, unmodifiableList(operators));
+    }
+
+    public static <O> Operator<O> infix(String regex, int precedence, Associativity associativity, BiFunction<MatchResult, List<O>, O> handler) {
+        return infix(regex, precedence, associativity, (match, operands, parser) -> handler.apply(match, operands));
+    }
+
+    public static <O> Operator<O> infix(String regex, int precedence, Associativity associativity, Handler<O> handler) {
+        return new Operator<>(Pattern.compile(regex), Fixity.INFIX, precedence, associativity, handler);
+    }
+
+    public static <O> Operator<O> prefix(String regex, int precedence, BiFunction<MatchResult, List<O>, O> handler) {
+        return prefix(regex, precedence, (match, operands, parser) -> handler.apply(match, operands));
+    }
+
+    public static <O> Operator<O> prefix(String regex, int precedence, Handler<O> handler) {
+        return new Operator<>(Pattern.compile(regex), Fixity.PREFIX, precedence, Associativity.RIGHT, handler);
+    }
+
+    public static <O> Operator<O> postfix(String regex, int precedence, BiFunction<MatchResult, List<O>, O> handler) {
+        return postfix(regex, precedence, (match, operands, parser) -> handler.apply(match, operands));
+    }
+
+    public static <O> Operator<O> postfix(String regex, int precedence, Handler<O> handler) {
+        return new Operator<>(Pattern.compile(regex), Fixity.POSTFIX, precedence, Associativity.LEFT, handler);
+    }
+}
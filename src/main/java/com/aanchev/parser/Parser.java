@@ -22,6 +22,22 @@ public interface Parser {
         return this.parse(input.subSequence(start, end));
     }
 
+    /**
+     * Tells whether the input conforms to the grammar, ideally without constructing the result.
+     */
+    default boolean recognize(CharSequence input) {
+        try {
+            this.parse(input);
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    default boolean recognize(CharSequence input, int start, int end) {
+        return this.recognize(input.subSequence(start, end));
+    }
+
 
     static <R> Parser parser(Function<CharSequence, R> impl) {
         return new Parser() {
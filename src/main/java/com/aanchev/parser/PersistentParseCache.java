@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A size-bounded, append-only, memory-mapped store of parse results, keyed by the input.
+ * <p>
+ * The store is tied to a grammar fingerprint (see {@link #fingerprint(List, String)}) and is emptied when opened
+ * with a different one. When full, the oldest half of the records is dropped by compacting the file in place.
+ * Lookups may run concurrently with each other; appends and compaction are exclusive.
+ * The store file is locked while open, so it is used by a single cache at a time.
+ */
+@Slf4j
+public class PersistentParseCache<O> implements Closeable {
+
+    private static final int MAGIC = 0x52585043;
+    private static final int VERSION = 2;
+
+    // magic, version, grammar fingerprint, end of the last committed record
+    private static final int HEADER_SIZE = 24;
+    private static final int END_OFFSET = 16;
+
+    // key length, value length, key hash, checksum of the key and value
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ResultSerializer<O> serializer;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, int[]> index = new HashMap<>();
+    private int end;
+
+    protected PersistentParseCache(FileChannel channel, int capacity, long fingerprint, ResultSerializer<O> serializer) throws IOException {
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.serializer = serializer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != fingerprint
+                || !load(buffer.getLong(END_OFFSET))) {
+            log.debug("Starting an empty parse cache (fingerprint {})", fingerprint);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, fingerprint);
+            reset();
+        }
+    }
+
+
+    /* Functionality */
+
+    public O get(CharSequence input) {
+        byte[] key = input.toString().getBytes(UTF_8);
+        long hash = hash(key);
+        byte[] value = null;
+
+        lock.readLock().lock();
+        try {
+            int[] offsets = index.get(hash);
+            if (offsets != null) {
+                for (int offset : offsets) {
+                    if (keyEquals(offset, key)) {
+                        value = read(offset + RECORD_HEADER_SIZE + key.length, buffer.getInt(offset + 4));
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return value == null ? null : serializer.deserialize(value);
+    }
+
+    public void put(CharSequence input, O result) {
+        byte[] key = input.toString().getBytes(UTF_8);
+        byte[] value = serializer.serialize(result);
+        long hash = hash(key);
+        int size = RECORD_HEADER_SIZE + key.length + value.length;
+
+        if (size > (buffer.capacity() - HEADER_SIZE) / 2) {
+            // too big to be worth keeping - it would be dropped by the next compaction anyway
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int[] offsets = index.get(hash);
+            if (offsets != null) {
+                for (int offset : offsets) {
+                    if (keyEquals(offset, key)) {
+                        return;
+                    }
+                }
+            }
+
+            if (end + size > buffer.capacity()) {
+                compact(size);
+            }
+
+            buffer.putInt(end, key.length);
+            buffer.putInt(end + 4, value.length);
+            buffer.putLong(end + 8, hash);
+            buffer.putLong(end + 16, hash(hash, value));
+            write(end + RECORD_HEADER_SIZE, key);
+            write(end + RECORD_HEADER_SIZE + key.length, value);
+
+            index(hash, end);
+            end += size;
+            buffer.putLong(END_OFFSET, end);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = 0;
+            for (int[] offsets : index.values()) {
+                size += offsets.length;
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /* Storage */
+
+    private void reset() {
+        index.clear();
+        end = HEADER_SIZE;
+        buffer.putLong(END_OFFSET, end);
+    }
+
+    /**
+     * Rebuilds the index from the records up to {@code committedEnd}.
+     *
+     * @return false if the records are corrupted
+     */
+    private boolean load(long committedEnd) {
+        if (committedEnd < HEADER_SIZE || committedEnd > buffer.capacity()) {
+            return false;
+        }
+
+        index.clear();
+        int offset = HEADER_SIZE;
+        while (offset < committedEnd) {
+            if (offset + RECORD_HEADER_SIZE > committedEnd) {
+                return false;
+            }
+
+            int keyLength = buffer.getInt(offset);
+            int valueLength = buffer.getInt(offset + 4);
+            long hash = buffer.getLong(offset + 8);
+            long checksum = buffer.getLong(offset + 16);
+            long size = RECORD_HEADER_SIZE + (long) keyLength + valueLength;
+
+            if (keyLength < 0 || valueLength < 0 || offset + size > committedEnd
+                    || hash(read(offset + RECORD_HEADER_SIZE, keyLength)) != hash
+                    || hash(hash, read(offset + RECORD_HEADER_SIZE + keyLength, valueLength)) != checksum) {
+                return false;
+            }
+
+            index(hash, offset);
+            offset += (int) size;
+        }
+
+        end = offset;
+        return true;
+    }
+
+    /**
+     * Drops the oldest records, until at most half of the capacity is in use and there is room for {@code needed} bytes.
+     */
+    private void compact(int needed) {
+        int target = Math.min((buffer.capacity() - HEADER_SIZE) / 2, buffer.capacity() - HEADER_SIZE - needed);
+
+        int from = HEADER_SIZE;
+        while (end - from > target) {
+            from += RECORD_HEADER_SIZE + buffer.getInt(from) + buffer.getInt(from + 4);
+        }
+
+        byte[] kept = read(from, end - from);
+        write(HEADER_SIZE, kept);
+        log.debug("Compacted the parse cache from {} to {} bytes", end - HEADER_SIZE, kept.length);
+
+        buffer.putLong(END_OFFSET, HEADER_SIZE + kept.length);
+        load(HEADER_SIZE + kept.length);
+    }
+
+    private void index(long hash, int offset) {
+        int[] offsets = index.get(hash);
+        if (offsets == null) {
+            index.put(hash, new int[]{offset});
+        } else {
+            offsets = Arrays.copyOf(offsets, offsets.length + 1);
+            offsets[offsets.length - 1] = offset;
+            index.put(hash, offsets);
+        }
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + RECORD_HEADER_SIZE + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void write(int offset, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(bytes);
+    }
+
+    private static long hash(byte[] bytes) {
+        // FNV-1a
+        return hash(0xcbf29ce484222325L, bytes);
+    }
+
+    /**
+     * Continues hashing from the hash of the preceding bytes.
+     */
+    private static long hash(long hash, byte[] bytes) {
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+    /* Static constructors */
+
+    /**
+     * Opens a cache for the results of the given parser, emptying it whenever the grammar or the {@code version} changes.
+     */
+    public static <O> PersistentParseCache<O> open(Path file, int capacity, RegexDownstrippingParser<O> parser, String version,
+                                                   ResultSerializer<O> serializer) throws IOException {
+        return open(file, capacity, fingerprint(parser.getRules(), parser.getLexer(), version), serializer);
+    }
+
+    public static <O> PersistentParseCache<O> open(Path file, int capacity, long fingerprint, ResultSerializer<O> serializer) throws IOException {
+        if (capacity < HEADER_SIZE * 2) {
+            throw new IllegalArgumentException("Capacity too small: " + capacity);
+        }
+        FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+        try {
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                throw new IllegalStateException("Parse cache already in use: " + file);
+            }
+            return new PersistentParseCache<>(channel, capacity, fingerprint, serializer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Fingerprints the structure of a grammar - the kinds, patterns and delimiters of the rules.
+     * Handlers cannot be fingerprinted, so the {@code version} should be changed whenever they change behaviour.
+     */
+    public static long fingerprint(List<? extends Rule<?>> rules, String version) {
+        return fingerprint(rules, null, version);
+    }
+
+    /**
+     * Also fingerprints the token rules, as they change what the rules are matched against.
+     */
+    public static long fingerprint(List<? extends Rule<?>> rules, Lexer lexer, String version) {
+        StringBuilder description = new StringBuilder(version);
+        if (lexer != null) {
+            for (Lexer.TokenRule token : lexer.getRules()) {
+                description.append("\ntoken ").append(token.getKind()).append(' ').append(token.isSkip());
+                describe(description, token.getPattern());
+            }
+        }
+        for (Rule<?> rule : rules) {
+            description.append('\n').append(rule.getClass().getName());
+            describe(description, rule.pattern());
+            if (rule.children() != null) {
+                description.append(" children ").append(Arrays.toString(rule.children()));
+            }
+
+            if (rule instanceof GroupRule) {
+                describe(description, ((GroupRule<?>) rule).getOpening());
+                describe(description, ((GroupRule<?>) rule).getClosing());
+            }
+            if (rule instanceof MultiGroupRule) {
+                description.append(' ').append(((MultiGroupRule<?>) rule).getDelimiters());
+            }
+            if (rule instanceof ListRule) {
+                ListRule<?> listRule = (ListRule<?>) rule;
+                describe(description, listRule.getSeparator());
+                description.append(' ').append(listRule.getDelimiters())
+                        .append(' ').append(listRule.getMin())
+                        .append(' ').append(listRule.getMax());
+            }
+            if (rule instanceof OperatorRule) {
+                description.append(' ').append(((OperatorRule<?>) rule).getDelimiters());
+                for (OperatorRule.Operator<?> operator : ((OperatorRule<?>) rule).getOperators()) {
+                    describe(description, operator.getPattern());
+                    description.append(' ').append(operator.getFixity())
+                            .append(' ').append(operator.getPrecedence())
+                            .append(' ').append(operator.getAssociativity());
+                }
+            }
+        }
+        return hash(description.toString().getBytes(UTF_8));
+    }
+
+    private static void describe(StringBuilder description, Pattern pattern) {
+        description.append(' ').append(pattern.pattern()).append('/').append(pattern.flags());
+    }
+}
@@ -13,6 +13,7 @@
 
 package com.aanchev.parser;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -20,26 +21,51 @@ import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 
 import static com.aanchev.parser.LazyList.lazyList;
+import static com.aanchev.parser.Tokens.toSource;
 import static java.util.Collections.unmodifiableList;
+import static lombok.AccessLevel.PACKAGE;
 
 @Slf4j
 public class RegexDownstrippingParser<O> implements Parser {
 
+    @Getter(PACKAGE)
     private List<Rule<O>> rules;
+    @Getter(PACKAGE)
+    private Lexer lexer;
+    // the capture groups parsed as child nodes, per rule
+    private int[][] children;
 
     public RegexDownstrippingParser(List<Rule<O>> rules) {
+        this(rules, null);
+    }
+
+    public RegexDownstrippingParser(List<Rule<O>> rules, Lexer lexer) {
         this.rules = unmodifiableList(rules);
+        this.lexer = lexer;
+
+        this.children = new int[rules.size()][];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = children(rules.get(i));
+        }
     }
 
 
     @Override
     @SuppressWarnings("unchecked")
     public <E> E parse(CharSequence input) {
+        if (lexer != null && !(input instanceof Tokens)) {
+            input = lexer.tokenize(input);
+        }
         return (E) parse(input, 0, input.length());
     }
 
     public <E> E parse(CharSequence input, int start, int end) {
-        for (Rule<O> rule : rules) {
+        if (lexer != null && !(input instanceof Tokens)) {
+            return parse(input.subSequence(start, end));
+        }
+
+        for (int r = 0; r < rules.size(); r++) {
+            Rule<O> rule = rules.get(r);
             Matcher matcher = rule.pattern().matcher(input).region(start, end);
 
             if (!matcher.matches()) {
@@ -48,9 +74,10 @@ public class RegexDownstrippingParser<O> implements Parser {
             }
 
             MatchResult match = matcher.toMatchResult();
-            O result = rule.handle(match, lazyList(match.groupCount(),
-                    i -> (match.start(i + 1) == -1 || match.end(i + 1) == -1) ? null :
-                            parse(input, match.start(i + 1), match.end(i + 1))), this);
+            int[] groups = children[r];
+            O result = rule.handle(toSource(input, match), lazyList(groups.length,
+                    i -> (match.start(groups[i]) == -1 || match.end(groups[i]) == -1) ? null :
+                            parse(input, match.start(groups[i]), match.end(groups[i]))), this);
 
 
             if (result == null) {
@@ -59,16 +86,195 @@ public class RegexDownstrippingParser<O> implements Parser {
             }
 
             if (log.isTraceEnabled()) {
-                log.trace("Rule {} matched against '{}'", rule, input.subSequence(start, end));
+                log.trace("Rule {} matched against '{}'", rule, text(input, start, end));
             }
 
             //noinspection unchecked
             return (E) result;
         }
 
-        throw new ParseException("Unable to parse a section. " +
-                String.format("No rule matched the region %d to %d ('%s')",
-                        start, end, input.subSequence(start, end)));
+        throw unmatched(input, start, end);
+    }
+
+
+    /* Validation */
+
+    /**
+     * Checks that the input conforms to the grammar, asking the rules to {@link Rule#accepts accept} the matches
+     * instead of handling them, so no results are constructed.
+     * Acceptors check every child region, so an input {@link #parse} gets away with - because a handler never asks
+     * for an invalid child - is still rejected. The region reported is the last one no rule accepted.
+     */
+    public ValidationResult validate(CharSequence input) {
+        Validation validation = new Validation();
+        if (validation.validate(input)) {
+            return ValidationResult.valid();
+        }
+        return ValidationResult.invalid(validation.failedStart, validation.failedEnd, validation.failedRegion.toString());
+    }
+
+    @Override
+    public boolean recognize(CharSequence input) {
+        return new Validation().validate(input);
+    }
+
+    @Override
+    public boolean recognize(CharSequence input, int start, int end) {
+        return new Validation().validate(input.subSequence(start, end));
+    }
+
+    /**
+     * Mirrors {@link #parse}: a region no rule accepts is rejected, but a rejected child region
+     * aborts the whole validation with a {@link ParseException}, just like a failure to parse it would.
+     */
+    private class Validation implements Parser {
+        private int failedStart = -1;
+        private int failedEnd = -1;
+        private CharSequence failedRegion;
+
+        // the offset of the match whose children a handler run in place of an acceptor is parsing
+        private int fallbackStart;
+
+        boolean validate(CharSequence input) {
+            try {
+                return recognize(input);
+            } catch (UnmatchedRegionException e) {
+                // thrown by a handler run in place of an acceptor
+                failedStart = e.start;
+                failedEnd = e.end;
+                failedRegion = e.region;
+                return false;
+            } catch (ParseException e) {
+                if (failedRegion == null) {
+                    fail(input, 0, input.length());
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public <E> E parse(CharSequence input) {
+            return RegexDownstrippingParser.this.parse(input);
+        }
+
+        @Override
+        public <E> E parse(CharSequence input, int start, int end) {
+            int offset = fallbackStart;
+            try {
+                return RegexDownstrippingParser.this.parse(input, start, end);
+            } catch (UnmatchedRegionException e) {
+                if (input instanceof Tokens) {
+                    // tokens already carry source offsets
+                    throw e;
+                }
+                // the offsets are relative to the matched text
+                throw new UnmatchedRegionException(e.start + offset, e.end + offset, e.region);
+            }
+        }
+
+        @Override
+        public boolean recognize(CharSequence input) {
+            return recognize(input, 0, input.length());
+        }
+
+        @Override
+        public boolean recognize(CharSequence input, int start, int end) {
+            if (lexer != null && !(input instanceof Tokens)) {
+                Tokens tokens;
+                try {
+                    tokens = lexer.tokenize(input.subSequence(start, end));
+                } catch (ParseException e) {
+                    return fail(input, start, end);
+                }
+                return recognize(tokens, 0, tokens.length());
+            }
+
+            for (int r = 0; r < rules.size(); r++) {
+                Rule<O> rule = rules.get(r);
+                Matcher matcher = rule.pattern().matcher(input).region(start, end);
+
+                if (!matcher.matches()) {
+                    //this rule did not match
+                    continue;
+                }
+
+                int[] groups = children[r];
+                int outerFallbackStart = fallbackStart;
+                fallbackStart = start;
+                try {
+                    if (rule.accepts(toSource(input, matcher), lazyList(groups.length,
+                            i -> matcher.start(groups[i]) == -1 || child(input, matcher.start(groups[i]), matcher.end(groups[i]))), this)) {
+                        return true;
+                    }
+                } finally {
+                    fallbackStart = outerFallbackStart;
+                }
+            }
+
+            return fail(input, start, end);
+        }
+
+        private boolean child(CharSequence input, int start, int end) {
+            if (!recognize(input, start, end)) {
+                throw new ParseException("Invalid child region");
+            }
+            return true;
+        }
+
+        private boolean fail(CharSequence input, int start, int end) {
+            // the last failure is the one the parse would have been aborted by
+            failedStart = sourceStart(input, start, end);
+            failedEnd = sourceEnd(input, start, end);
+            failedRegion = text(input, start, end);
+            return false;
+        }
+    }
+
+    private static ParseException unmatched(CharSequence input, int start, int end) {
+        return new UnmatchedRegionException(sourceStart(input, start, end), sourceEnd(input, start, end),
+                text(input, start, end).toString());
+    }
+
+    private static class UnmatchedRegionException extends ParseException {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final String region;
+
+        UnmatchedRegionException(int start, int end, String region) {
+            super("Unable to parse a section. " +
+                    String.format("No rule matched the region %d to %d ('%s')", start, end, region));
+            this.start = start;
+            this.end = end;
+            this.region = region;
+        }
+    }
+
+    private static int[] children(Rule<?> rule) {
+        int[] groups = rule.children();
+        if (groups != null) {
+            // the map must not change after construction
+            return groups.clone();
+        }
+
+        groups = new int[rule.pattern().matcher("").groupCount()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = i + 1;
+        }
+        return groups;
+    }
+
+    private static int sourceStart(CharSequence input, int start, int end) {
+        return input instanceof Tokens ? ((Tokens) input).sourceStart(start, end) : start;
+    }
+
+    private static int sourceEnd(CharSequence input, int start, int end) {
+        return input instanceof Tokens ? ((Tokens) input).sourceEnd(start, end) : end;
+    }
+
+    private static CharSequence text(CharSequence input, int start, int end) {
+        return input instanceof Tokens ? ((Tokens) input).subSequence(start, end).text() : input.subSequence(start, end);
     }
 }
 
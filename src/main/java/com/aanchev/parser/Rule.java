@@ -1,7 +1,33 @@
 package com.aanchev.parser;
 
+import java.util.List;
+import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
+import static com.aanchev.parser.LazyList.lazyList;
+
 public interface Rule<O> extends Handler<O> {
     Pattern pattern();
+
+    /**
+     * Used instead of {@link #handle} when only validating.
+     * Unless overridden, the only way to tell is to construct the result.
+     */
+    default boolean accepts(MatchResult match, List<Boolean> children, Parser parser) {
+        int[] groups = children();
+        CharSequence input = Tokens.input(match);
+        return handle(match, lazyList(groups == null ? match.groupCount() : groups.length, i -> {
+            int group = groups == null ? i + 1 : groups[i];
+            return match.group(group) == null ? null
+                    : parser.parse(input, Tokens.inputStart(match, group), Tokens.inputEnd(match, group));
+        }), parser) != null;
+    }
+
+    /**
+     * The capture groups whose regions are the child nodes of this rule, in order.
+     * Null means every capture group is a child.
+     */
+    default int[] children() {
+        return null;
+    }
 }
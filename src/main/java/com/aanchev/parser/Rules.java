@@ -34,4 +34,94 @@ public class Rules {
     public static <O> Rule<O> rule(Pattern pattern, Handler<O> handler) {
         return new SimpleRule<>(pattern, handler);
     }
+
+
+    public static <O> Rule<O> rule(String regex, Function<MatchResult, O> handler, Acceptor acceptor) {
+        return new SimpleRule<>(Pattern.compile(regex), (match, nodes, parser) -> handler.apply(match), acceptor);
+    }
+
+    public static <O> Rule<O> rule(String regex, BiFunction<MatchResult, List<O>, O> handler, Acceptor acceptor) {
+        return new SimpleRule<>(Pattern.compile(regex), (match, nodes, parser) -> handler.apply(match, nodes), acceptor);
+    }
+
+    public static <O> Rule<O> rule(String regex, Handler<O> handler, Acceptor acceptor) {
+        return new SimpleRule<>(Pattern.compile(regex), handler, acceptor);
+    }
+
+
+    public static <O> Rule<O> rule(Pattern pattern, Function<MatchResult, O> handler, Acceptor acceptor) {
+        return new SimpleRule<>(pattern, (match, nodes, parser) -> handler.apply(match), acceptor);
+    }
+
+    public static <O> Rule<O> rule(Pattern pattern, BiFunction<MatchResult, List<O>, O> handler, Acceptor acceptor) {
+        return new SimpleRule<>(pattern, (match, nodes, parser) -> handler.apply(match, nodes), acceptor);
+    }
+
+    public static <O> Rule<O> rule(Pattern pattern, Handler<O> handler, Acceptor acceptor) {
+        return new SimpleRule<>(pattern, handler, acceptor);
+    }
+
+
+    /**
+     * Makes only the given capture groups child nodes of the rule, so that no others are ever parsed.
+     */
+    public static <O> Rule<O> children(Rule<O> rule, int... groups) {
+        if (!(rule instanceof SimpleRule)) {
+            throw new IllegalArgumentException("Only the children of simple rules can be selected, not " + rule);
+        }
+
+        int groupCount = rule.pattern().matcher("").groupCount();
+        for (int group : groups) {
+            if (group < 1 || group > groupCount) {
+                throw new IllegalArgumentException("No group " + group + " in pattern " + rule.pattern());
+            }
+        }
+
+        SimpleRule<O> simpleRule = (SimpleRule<O>) rule;
+        return new SimpleRule<>(simpleRule.pattern(), simpleRule.getHandler(), simpleRule.getAcceptor(), groups.clone());
+    }
+
+    public static <O> Rule<O> children(Rule<O> rule, String... names) {
+        int[] groups = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            groups[i] = groupIndex(rule.pattern(), names[i]);
+        }
+        return children(rule, groups);
+    }
+
+    /**
+     * Finds the number of a named group, by counting the capturing groups opened before it.
+     */
+    private static int groupIndex(Pattern pattern, String name) {
+        String regex = pattern.pattern();
+        int group = 0;
+        boolean inClass = false;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (regex.startsWith("Q", i + 1)) {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 1;
+                } else {
+                    i++;
+                }
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                if (!regex.startsWith("?", i + 1)) {
+                    group++;
+                } else if (regex.startsWith("?<", i + 1) && !regex.startsWith("?<=", i + 1) && !regex.startsWith("?<!", i + 1)) {
+                    group++;
+                    if (regex.startsWith(name + ">", i + 3)) {
+                        return group;
+                    }
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("No group named '" + name + "' in pattern " + regex);
+    }
 }
@@ -1,5 +1,7 @@
 package com.aanchev.parser;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.Value;
 import lombok.experimental.Accessors;
 
@@ -12,9 +14,40 @@ public class SimpleRule<O> implements Rule<O> {
     @Accessors(fluent = true)
     private final Pattern pattern;
     private final Handler<O> handler;
+    private final Acceptor acceptor;
+    @Getter(AccessLevel.NONE)
+    private final int[] children;
+
+    public SimpleRule(Pattern pattern, Handler<O> handler) {
+        this(pattern, handler, null);
+    }
+
+    public SimpleRule(Pattern pattern, Handler<O> handler, Acceptor acceptor) {
+        this(pattern, handler, acceptor, null);
+    }
+
+    public SimpleRule(Pattern pattern, Handler<O> handler, Acceptor acceptor, int[] children) {
+        this.pattern = pattern;
+        this.handler = handler;
+        this.acceptor = acceptor;
+        this.children = children == null ? null : children.clone();
+    }
+
+    @Override
+    public int[] children() {
+        return children == null ? null : children.clone();
+    }
 
     @Override
     public O handle(MatchResult match, List<O> nodes, Parser parser) {
         return handler.handle(match, nodes, parser);
     }
+
+    @Override
+    public boolean accepts(MatchResult match, List<Boolean> children, Parser parser) {
+        if (acceptor == null) {
+            return Rule.super.accepts(match, children, parser);
+        }
+        return acceptor.accepts(match, children, parser);
+    }
 }
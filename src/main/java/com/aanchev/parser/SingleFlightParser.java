@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.*;
+
+/**
+ * Coalesces concurrent parses of equal inputs, so that a single computation is shared by all callers waiting for it.
+ * <p>
+ * Nothing is kept once a computation completes - the next request for the same input parses it again.
+ * By default parsing runs on virtual threads when the runtime has them, or on the common fork-join pool otherwise.
+ */
+@Slf4j
+public class SingleFlightParser implements Parser {
+
+    private static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+    private final Parser parser;
+    private final Executor executor;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public SingleFlightParser(Parser parser) {
+        this(parser, DEFAULT_EXECUTOR);
+    }
+
+    public SingleFlightParser(Parser parser, Executor executor) {
+        this.parser = parser;
+        this.executor = executor;
+    }
+
+
+    /* Functionality */
+
+    public <E> CompletableFuture<E> parseAsync(CharSequence input) {
+        String key = input.toString();
+
+        CompletableFuture<Object> promise = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            promise = existing;
+        } else {
+            start(key, promise);
+        }
+
+        // a separate stage per caller, so that cancelling it does not affect the other callers
+        return promise.thenApply(SingleFlightParser::cast);
+    }
+
+    @Override
+    public <E> E parse(CharSequence input) {
+        try {
+            return this.<E>parseAsync(input).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The number of distinct inputs being parsed at the moment.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private void start(String key, CompletableFuture<Object> promise) {
+        try {
+            executor.execute(() -> compute(key, promise));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+    }
+
+    private void compute(String key, CompletableFuture<Object> promise) {
+        Object result;
+        try {
+            result = parser.parse(key);
+        } catch (Throwable e) {
+            // late callers should start a new computation, rather than join the failed one
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+            return;
+        }
+        inFlight.remove(key, promise);
+        promise.complete(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E cast(Object result) {
+        return (E) result;
+    }
+
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.debug("Virtual threads are not available, parsing on the common pool");
+            return ForkJoinPool.commonPool();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import java.util.regex.MatchResult;
+
+/**
+ * The output of a {@link Lexer}: a character sequence with one character - the token kind - per token,
+ * backed by primitive arrays holding the span of every token in the source.
+ * <p>
+ * Rule patterns are matched against the kinds, while handlers are given matches translated back to the source.
+ */
+public final class Tokens implements CharSequence {
+
+    private final CharSequence source;
+    private final char[] kinds;
+    private final int[] starts;
+    private final int[] ends;
+    private final int offset;
+    private final int length;
+
+    Tokens(CharSequence source, char[] kinds, int[] starts, int[] ends) {
+        this(source, kinds, starts, ends, 0, kinds.length);
+    }
+
+    private Tokens(CharSequence source, char[] kinds, int[] starts, int[] ends, int offset, int length) {
+        this.source = source;
+        this.kinds = kinds;
+        this.starts = starts;
+        this.ends = ends;
+        this.offset = offset;
+        this.length = length;
+    }
+
+
+    /* CharSequence */
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return kinds[offset + index];
+    }
+
+    @Override
+    public Tokens subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new Tokens(source, kinds, starts, ends, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(kinds, offset, length);
+    }
+
+
+    /* Source mapping */
+
+    public CharSequence source() {
+        return source;
+    }
+
+    public int start(int index) {
+        return starts[offset + index];
+    }
+
+    public int end(int index) {
+        return ends[offset + index];
+    }
+
+    public String text(int index) {
+        return source.subSequence(start(index), end(index)).toString();
+    }
+
+    /**
+     * @return the source text spanned by this sequence of tokens, including any skipped input between them
+     */
+    public String text() {
+        return source.subSequence(sourceStart(0, length), sourceEnd(0, length)).toString();
+    }
+
+    /**
+     * @return the source offset at which the tokens {@code start} to {@code end} begin
+     */
+    int sourceStart(int start, int end) {
+        return start < end ? starts[offset + start] : boundary(offset + start);
+    }
+
+    int sourceEnd(int start, int end) {
+        return start < end ? ends[offset + end - 1] : boundary(offset + start);
+    }
+
+    private int boundary(int index) {
+        if (index < kinds.length) {
+            return starts[index];
+        }
+        return index > 0 ? ends[index - 1] : 0;
+    }
+
+    /**
+     * Translates a match against (a region of) tokens to a match against the source text.
+     * Matches against anything other than tokens are returned as they are.
+     */
+    public static MatchResult toSource(CharSequence input, MatchResult match) {
+        return input instanceof Tokens ? new SourceMatch((Tokens) input, match) : match;
+    }
+
+    /**
+     * @return the tokens of the whole match if it was made against tokens, otherwise the matched text
+     */
+    public static CharSequence input(MatchResult match) {
+        if (match instanceof SourceMatch) {
+            return ((SourceMatch) match).tokens();
+        }
+        return match.group();
+    }
+
+    /**
+     * @return the start of a capture group within {@link #input(MatchResult)}, or -1 if the group did not match
+     */
+    public static int inputStart(MatchResult match, int group) {
+        MatchResult inputMatch = match instanceof SourceMatch ? ((SourceMatch) match).match : match;
+        int start = inputMatch.start(group);
+        return start == -1 ? -1 : start - inputMatch.start();
+    }
+
+    /**
+     * @return the end of a capture group within {@link #input(MatchResult)}, or -1 if the group did not match
+     */
+    public static int inputEnd(MatchResult match, int group) {
+        MatchResult inputMatch = match instanceof SourceMatch ? ((SourceMatch) match).match : match;
+        int end = inputMatch.end(group);
+        return end == -1 ? -1 : end - inputMatch.start();
+    }
+
+    private static class SourceMatch implements MatchResult {
+        private final Tokens tokens;
+        private final MatchResult match;
+
+        SourceMatch(Tokens tokens, MatchResult match) {
+            this.tokens = tokens;
+            this.match = match;
+        }
+
+        Tokens tokens() {
+            return tokens.subSequence(match.start(), match.end());
+        }
+
+        @Override
+        public int start() {
+            return start(0);
+        }
+
+        @Override
+        public int start(int group) {
+            int start = match.start(group);
+            return start == -1 ? -1 : tokens.sourceStart(start, match.end(group));
+        }
+
+        @Override
+        public int end() {
+            return end(0);
+        }
+
+        @Override
+        public int end(int group) {
+            int start = match.start(group);
+            return start == -1 ? -1 : tokens.sourceEnd(start, match.end(group));
+        }
+
+        @Override
+        public String group() {
+            return group(0);
+        }
+
+        @Override
+        public String group(int group) {
+            int start = start(group);
+            return start == -1 ? null : tokens.source.subSequence(start, end(group)).toString();
+        }
+
+        @Override
+        public int groupCount() {
+            return match.groupCount();
+        }
+    }
+}
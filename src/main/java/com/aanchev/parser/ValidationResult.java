@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.Value;
+
+/**
+ * Either success, or the region which no rule accepted - the one parsing would fail on - as offsets in the source.
+ */
+@Value
+public class ValidationResult {
+
+    private static final ValidationResult VALID = new ValidationResult(true, -1, -1, null);
+
+    private final boolean valid;
+    private final int start;
+    private final int end;
+    private final String region;
+
+
+    /* Static constructors */
+
+    public static ValidationResult valid() {
+        return VALID;
+    }
+
+    public static ValidationResult invalid(int start, int end, String region) {
+        return new ValidationResult(false, start, end, region);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.Collections.unmodifiableList;
+import static lombok.AccessLevel.PROTECTED;
+
+/**
+ * Replays recorded inputs (see {@link InputRecorder}) against a grammar, so that the JIT has compiled
+ * the parsing paths before real traffic arrives.
+ * <p>
+ * The samples are both parsed and recognised, in rounds of at least {@code roundMillis}, until the throughput
+ * of two consecutive rounds differs by less than {@code tolerance}. Optionally, every sample is then parsed
+ * once more with a {@code prefill} parser, e.g. a {@link CachingParser}, to fill its cache.
+ */
+@Slf4j
+@AllArgsConstructor(access = PROTECTED)
+public class WarmUp {
+
+    private final Parser parser;
+    private final Parser prefill;
+    private final double tolerance;
+    private final long roundMillis;
+    private final int maxRounds;
+
+
+    /* Functionality */
+
+    public CompletableFuture<Report> start(List<String> samples) {
+        return start(samples, ForkJoinPool.commonPool());
+    }
+
+    public CompletableFuture<Report> start(List<String> samples, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> run(samples), executor);
+    }
+
+    public Report run(List<String> samples) {
+        List<Double> throughputs = new ArrayList<>();
+        int failures = 0;
+        boolean steady = samples.isEmpty();
+
+        while (!steady && throughputs.size() < maxRounds) {
+            long started = System.nanoTime();
+            long deadline = started + roundMillis * 1_000_000;
+            long parses = 0;
+            int passFailures = 0;
+
+            do {
+                passFailures = 0;
+                for (String sample : samples) {
+                    // a bad sample must not stop the warm-up, whatever its handlers throw - or however deep it nests
+                    try {
+                        parser.parse(sample);
+                        parser.recognize(sample);
+                    } catch (RuntimeException | StackOverflowError e) {
+                        passFailures++;
+                    }
+                    parses++;
+                }
+            } while (System.nanoTime() < deadline);
+            failures = passFailures;
+
+            double throughput = parses * 1e9 / (System.nanoTime() - started);
+            if (!throughputs.isEmpty()) {
+                double previous = throughputs.get(throughputs.size() - 1);
+                steady = Math.abs(throughput - previous) < tolerance * previous;
+            }
+            throughputs.add(throughput);
+        }
+
+        int prefilled = 0;
+        if (prefill != null) {
+            for (String sample : samples) {
+                try {
+                    prefill.parse(sample);
+                    prefilled++;
+                } catch (RuntimeException | StackOverflowError e) {
+                    // already counted among the failures
+                }
+            }
+        }
+
+        Report report = new Report(samples.size(), unmodifiableList(throughputs), steady, failures, prefilled);
+        log.info("Parser warm-up finished: {}", report);
+        return report;
+    }
+
+    @Value
+    public static class Report {
+        private final int samples;
+        // parses per second, in each round
+        private final List<Double> throughputs;
+        private final boolean steady;
+        // samples which did not parse, in the last round
+        private final int failures;
+        private final int prefilled;
+
+        public int rounds() {
+            return throughputs.size();
+        }
+    }
+
+
+    /* Static constructors */
+
+    public static WarmUp warmUp(Parser parser) {
+        return warmUp(parser, null);
+    }
+
+    public static WarmUp warmUp(Parser parser, Parser prefill) {
+        return warmUp(parser, prefill, 0.05, 200, 50);
+    }
+
+    public static WarmUp warmUp(Parser parser, Parser prefill, double tolerance, long roundMillis, int maxRounds) {
+        return new WarmUp(parser, prefill, tolerance, roundMillis, maxRounds);
+    }
+}
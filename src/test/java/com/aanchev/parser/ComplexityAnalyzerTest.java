@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import com.aanchev.parser.ComplexityAnalyzer.Finding;
+import com.aanchev.parser.ComplexityAnalyzer.Report;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.aanchev.parser.ComplexityAnalyzer.Complexity.*;
+import static com.aanchev.parser.ComplexityAnalyzer.Problem.*;
+import static com.aanchev.parser.ComplexityAnalyzer.analyze;
+import static com.aanchev.parser.GroupRule.groupRule;
+import static com.aanchev.parser.Rules.rule;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.text.StringContainsInOrder.stringContainsInOrder;
+import static org.junit.Assume.assumeNoException;
+
+public class ComplexityAnalyzerTest {
+
+    @Test
+    public void analyze_acceptsLinearGrammars() {
+        Report report = analyze(asList(
+                rule("\\s*[A]\\s*", match -> "type a"),
+                rule("\\d+", match -> "int"),
+                rule("\\+(\\d+)", match -> "positive"),
+                rule("(\\w++)(\\[.*+)", match -> "possessive")
+        ));
+
+        assertThat(report.getFindings(), is(empty()));
+        assertThat(report.worstCase(), is(LINEAR));
+    }
+
+    @Test
+    public void analyze_findsNestedQuantifiers_withAdversarialInput() {
+        Report report = analyze(singletonList(
+                rule("x(\\w+\\s?)+y", match -> "")
+        ));
+
+        assertThat(report.worstCase(), is(EXPONENTIAL));
+        Finding finding = report.getFindings().get(0);
+        assertThat(finding.getProblem(), is(NESTED_QUANTIFIER));
+
+        String input = finding.adversarialInput(4);
+        assertThat(input, is("xaaaa!"));
+        assertThat(Pattern.matches("x(\\w+\\s?)+y", input), is(false));
+    }
+
+    @Test
+    public void analyze_findsOverlappingAlternatives() {
+        Report report = analyze(asList(
+                rule("(\\w|\\d)*!", match -> ""),
+                rule("(a|b|ab)*c", match -> "")
+        ));
+
+        assertThat(report.getComplexities(), is(asList(EXPONENTIAL, EXPONENTIAL)));
+        assertThat(report.getFindings().get(0).getProblem(), is(OVERLAPPING_ALTERNATIVES));
+        assertThat(report.getFindings().get(1).getProblem(), is(OVERLAPPING_ALTERNATIVES));
+    }
+
+    @Test
+    public void analyze_acceptsAlternatives_thatOnlyStartAlike() {
+        Report report = analyze(singletonList(
+                rule("(a|ab)*c", match -> "")
+        ));
+
+        assertThat(report.getFindings(), is(empty()));
+    }
+
+    @Test
+    public void analyze_generatesAdversarialInput_thatFailsToMatch_inGrowingTime() {
+        Pattern pattern = Pattern.compile("(\\d+)*!");
+        Finding finding = analyze(singletonList(rule(pattern.pattern(), match -> ""))).getFindings().get(0);
+
+        assertThat(pattern.matcher(finding.adversarialInput(8)).matches(), is(false));
+        assertThat(time(pattern, finding.adversarialInput(20)) > 2 * time(pattern, finding.adversarialInput(10)), is(true));
+    }
+
+    @Test
+    public void analyze_findsAmbiguousSplits_andRecursiveDownstripping() {
+        Report report = analyze(singletonList(
+                rule("(.*)\\+(.*)", (match, children) -> "")
+        ));
+
+        assertThat(report.worstCase(), is(QUADRATIC));
+
+        List<Finding> findings = report.getFindings();
+        assertThat(findings.get(0).getProblem(), is(AMBIGUOUS_QUANTIFIERS));
+        assertThat(findings.get(0).adversarialInput(3), is("a+aa+aa+a\n"));
+        assertThat(findings.get(1).getProblem(), is(RECURSIVE_DOWNSTRIPPING));
+        assertThat(findings.get(1).adversarialInput(3), is("+a+a+a"));
+    }
+
+    @Test
+    public void analyze_findsRecursiveDownstripping_onlyWhenTheGroupCanMatchTheRuleAgain() {
+        Report report = analyze(asList(
+                rule("\\+(.*)", (match, children) -> ""),
+                rule("(\\w+)(\\[.*\\])", (match, children) -> "")
+        ));
+
+        assertThat(report.getComplexities(), is(asList(QUADRATIC, LINEAR)));
+        assertThat(report.getFindings().get(0).adversarialInput(4), is("++++"));
+    }
+
+    @Test
+    public void analyze_estimatesTheReadmeGrammar() {
+        Report report = analyze(asList(
+                rule("(\\w+)(\\[.*\\])", (match, children) -> ""),
+                rule("\\w+", (match, children) -> ""),
+                groupRule("\\[", "\\]", (match, children) -> ""),
+                rule("\\[(\\w+)\\]", (match, children) -> ""),
+                rule("\\[(\\w+)\\*=(['\"])?(.*)\\2\\]", (match, children) -> "")
+        ));
+
+        assertThat(report.getComplexities(), is(asList(LINEAR, LINEAR, QUADRATIC, LINEAR, QUADRATIC)));
+    }
+
+    @Test
+    public void analyze_findsNestedGroups_andUnanchoredDelimiters() {
+        Report report = analyze(singletonList(
+                groupRule("\\s*\\(", "\\)", (match, children) -> "")
+        ));
+
+        assertThat(report.getFindings().get(0).getProblem(), is(UNANCHORED_DELIMITER));
+        assertThat(report.getFindings().get(1).getProblem(), is(NESTED_GROUPS));
+        assertThat(report.getFindings().get(1).adversarialInput(3), is(" ( ( ()))"));
+    }
+
+    @Test
+    public void analyze_understandsNamedCharacters() {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile("\\N{DIGIT ONE}{2}[a{]");
+        } catch (PatternSyntaxException e) {
+            // named characters need Java 9
+            assumeNoException(e);
+            return;
+        }
+
+        assertThat(analyze(singletonList(rule(pattern.pattern(), match -> ""))).worstCase(), is(LINEAR));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void verify_failsGrammars_exceedingTheLimit() {
+        try {
+            analyze(asList(
+                    rule("\\d+", match -> "int"),
+                    rule("(\\d+)*!", match -> "")
+            )).verify(QUADRATIC);
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), stringContainsInOrder(asList("rule 1", "NESTED_QUANTIFIER", "EXPONENTIAL", "00000000#")));
+            throw e;
+        }
+    }
+
+    @Test
+    public void verify_passesGrammars_withinTheLimit() {
+        analyze(asList(
+                rule("\\d+", match -> "int"),
+                rule("\\+(.*)", (match, children) -> "")
+        )).verify(QUADRATIC);
+    }
+
+    @Test
+    public void analyze_understandsHexadecimalEscapes_andNamedBackReferences() {
+        Report report = analyze(asList(
+                rule("\\x{41}+\\x42\\u0043", match -> ""),
+                rule("\\+(?<q>['\"])(.*)\\k<q>", (match, children) -> ""),
+                rule("\\R\\h*(\\d)", (match, children) -> "")
+        ));
+
+        assertThat(report.getComplexities(), is(asList(LINEAR, QUADRATIC, LINEAR)));
+        Finding finding = report.getFindings().get(0);
+        assertThat(finding.getProblem(), is(RECURSIVE_DOWNSTRIPPING));
+        assertThat(finding.getRight(), is("\""));
+    }
+
+    private static long time(Pattern pattern, String input) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            pattern.matcher(input).matches();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import org.junit.Test;
+
+import static com.aanchev.parser.GroupRule.groupRule;
+import static com.aanchev.parser.Lexer.*;
+import static com.aanchev.parser.Rules.rule;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.text.StringContainsInOrder.stringContainsInOrder;
+
+public class LexerTest {
+
+    private static final Lexer LEXER = lexer(asList(
+            skip("\\s+"),
+            token('n', "\\d+"),
+            token('i', "[A-Za-z_]\\w*"),
+            token('s', "'(?:[^'\\\\]|\\\\.)*'"),
+            token('+', "\\+"),
+            token('*', "\\*"),
+            token('(', "\\("),
+            token(')', "\\)")
+    ));
+
+    @Test
+    public void tokenize_producesOneKindPerToken_andSourceSpans() {
+        Tokens tokens = LEXER.tokenize("foo + 'a + b' * 12");
+
+        assertThat(tokens.toString(), is("i+s*n"));
+        assertThat(tokens.text(2), is("'a + b'"));
+        assertThat(tokens.start(4), is(16));
+        assertThat(tokens.end(4), is(18));
+        assertThat(tokens.subSequence(1, 4).text(), is("+ 'a + b' *"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void tokenize_throws_whenNoTokenRuleMatches() {
+        try {
+            LEXER.tokenize("a + #");
+        } catch (ParseException e) {
+            assertThat(e.getMessage(), stringContainsInOrder(asList("4", "#")));
+            throw e;
+        }
+    }
+
+    @Test
+    public void parse_matchesRules_overTokenKinds() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                rule("(.*)\\+(.*)", (match, children) -> String.format("(%s + %s)", children.get(0), children.get(1))),
+                rule("(.*)\\*(.*)", (match, children) -> String.format("(%s * %s)", children.get(0), children.get(1))),
+                rule("n", match -> "int " + match.group()),
+                rule("i", match -> "var " + match.group()),
+                rule("s", match -> "str " + match.group())
+        ), LEXER);
+
+        // the '+' inside the string literal is a part of a single token, so it never splits the expression
+        assertThat(parser.parse("x + 'a + b' * 12"), is("(var x + (str 'a + b' * int 12))"));
+    }
+
+    @Test
+    public void parse_givesHandlers_matchesAgainstTheSource() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                rule("(i)\\+(n)", match -> String.format("%s[%d..%d] plus %s", match.group(1), match.start(1), match.end(1), match.group(2))),
+                rule("i", match -> match.group())
+        ), LEXER);
+
+        assertThat(parser.parse("  abc +  42"), is("abc[2..5] plus 42"));
+    }
+
+    @Test
+    public void parse_supportsGroupRules_overTokens() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                groupRule("\\(", "\\)", (match, children) -> String.join(" ", children)),
+                rule("\\((.*)\\)", (match, children) -> "<" + children.get(0) + ">"),
+                rule("i", match -> match.group())
+        ), LEXER);
+
+        assertThat(parser.parse("( a ) (b)"), is("<a> <b>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_reportsTheSourceOffsets_andText_ofUnmatchedRegions() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                rule("i\\+(.*)", (match, children) -> children.get(0))
+        ), LEXER);
+
+        try {
+            parser.parse("a + 'text'");
+        } catch (ParseException e) {
+            assertThat(e.getMessage(), stringContainsInOrder(asList("region 4 to 10", "'text'")));
+            throw e;
+        }
+    }
+
+    @Test
+    public void validate_reportsTheSourceOffsets_ofTheFailingRegion() {
+        RegexDownstrippingParser<String> parser = new RegexDownstrippingParser<>(asList(
+                rule("i\\+(.*)", (match, children) -> children.get(0), Acceptor.allChildren()),
+                rule("n", match -> match.group(), Acceptor.matched())
+        ), LEXER);
+
+        assertThat(parser.validate("a + 'text'"), is(ValidationResult.invalid(4, 10, "'text'")));
+        assertThat(parser.validate("abc def"), is(ValidationResult.invalid(0, 7, "abc def")));
+        assertThat(parser.validate("a + 1").isValid(), is(true));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.aanchev.parser.Lexer.lexer;
+import static com.aanchev.parser.Lexer.skip;
+import static com.aanchev.parser.Lexer.token;
+import static com.aanchev.parser.PersistentParseCache.fingerprint;
+import static com.aanchev.parser.PersistentParseCache.open;
+import static com.aanchev.parser.ResultSerializer.strings;
+import static com.aanchev.parser.Rules.children;
+import static com.aanchev.parser.Rules.rule;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+public class PersistentParseCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger parses = new AtomicInteger();
+
+    private final List<com.aanchev.parser.Rule<String>> rules = asList(
+            rule("\\d+", match -> {
+                parses.incrementAndGet();
+                return "int " + match.group();
+            }),
+            rule("\\+(.*)", (match, children) -> "positive " + children.get(0))
+    );
+
+    @Test
+    public void cachingParser_skipsParsing_afterARestart() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+        long fingerprint = fingerprint(rules, "1");
+
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, fingerprint, strings())) {
+            Parser parser = new CachingParser<>(new RegexDownstrippingParser<>(rules), cache);
+            assertThat(parser.parse("+123"), is("positive int 123"));
+            assertThat(parser.parse("+123"), is("positive int 123"));
+        }
+        assertThat(parses.get(), is(1));
+
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, fingerprint, strings())) {
+            Parser parser = new CachingParser<>(new RegexDownstrippingParser<>(rules), cache);
+            assertThat(parser.parse("+123"), is("positive int 123"));
+        }
+        assertThat(parses.get(), is(1));
+    }
+
+    @Test
+    public void open_invalidatesTheCache_whenTheGrammarChanges() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, fingerprint(rules, "1"), strings())) {
+            cache.put("+1", "positive int 1");
+        }
+
+        List<com.aanchev.parser.Rule<String>> changed = asList(rules.get(0), rule("-(.*)", (match, children) -> ""));
+        assertThat(fingerprint(changed, "1"), is(not(fingerprint(rules, "1"))));
+        assertThat(fingerprint(rules, "2"), is(not(fingerprint(rules, "1"))));
+
+        List<com.aanchev.parser.Rule<String>> selected = asList(rules.get(0), children(rules.get(1), 1));
+        assertThat(fingerprint(selected, "1"), is(not(fingerprint(rules, "1"))));
+
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, fingerprint(changed, "1"), strings())) {
+            assertThat(cache.get("+1"), nullValue());
+            assertThat(cache.size(), is(0));
+        }
+    }
+
+    @Test
+    public void put_staysWithinCapacity_byDroppingTheOldestRecords() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+        int capacity = 4096;
+
+        try (PersistentParseCache<String> cache = open(file, capacity, 42, strings())) {
+            for (int i = 0; i < 1000; i++) {
+                cache.put("input " + i, "result " + i);
+            }
+
+            assertThat(cache.get("input 0"), nullValue());
+            assertThat(cache.get("input 999"), is("result 999"));
+            assertThat(cache.size(), lessThan(1000));
+        }
+        assertThat(Files.size(file), is((long) capacity));
+
+        try (PersistentParseCache<String> cache = open(file, capacity, 42, strings())) {
+            assertThat(cache.get("input 999"), is("result 999"));
+        }
+    }
+
+    @Test
+    public void open_discardsCorruptedRecords() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+
+        // the first byte of the key, then the first byte of the value
+        for (int corrupted : new int[]{24 + 24, 24 + 24 + "input".length()}) {
+            try (PersistentParseCache<String> cache = open(file, 4096, 42, strings())) {
+                cache.put("input", "result");
+                assertThat(cache.get("input"), is("result"));
+            }
+
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[corrupted] ^= 1;
+            Files.write(file, bytes);
+
+            try (PersistentParseCache<String> cache = open(file, 4096, 42, strings())) {
+                assertThat(cache.get("input"), nullValue());
+                assertThat(cache.size(), is(0));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void open_failsFast_whenTheFileIsAlreadyOpen() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+
+        try (PersistentParseCache<String> cache = open(file, 4096, 42, strings())) {
+            open(file, 4096, 42, strings()).close();
+        }
+    }
+
+    @Test
+    public void open_releasesTheFile_whenClosed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+
+        open(file, 4096, 42, strings()).close();
+        try (PersistentParseCache<String> cache = open(file, 4096, 42, strings())) {
+            assertThat(cache.size(), is(0));
+        }
+    }
+
+    @Test
+    public void open_fingerprintsTheParser_includingItsLexer() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache");
+        Lexer lexer = lexer(asList(token('n', "\\d+"), skip("\\s+")));
+        Lexer changedLexer = lexer(asList(token('n', "\\d+"), skip(" +")));
+
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, new RegexDownstrippingParser<>(rules, lexer), "1", strings())) {
+            cache.put("1", "int 1");
+        }
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, new RegexDownstrippingParser<>(rules, lexer), "1", strings())) {
+            assertThat(cache.get("1"), is("int 1"));
+        }
+        try (PersistentParseCache<String> cache = open(file, 1 << 16, new RegexDownstrippingParser<>(rules, changedLexer), "1", strings())) {
+            assertThat(cache.get("1"), nullValue());
+        }
+        assertThat(fingerprint(rules, lexer, "1"), is(not(fingerprint(rules, "1"))));
+    }
+}
@@ -15,6 +15,15 @@ package com.aanchev.parser;
 
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static com.aanchev.parser.Acceptor.allChildren;
+import static com.aanchev.parser.Acceptor.matched;
+import static com.aanchev.parser.GroupRule.groupRule;
+import static com.aanchev.parser.ListRule.listRule;
+import static com.aanchev.parser.Rules.children;
 import static com.aanchev.parser.Rules.rule;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
@@ -174,4 +183,135 @@ public class RegexDownstrippingParserTest {
 
         assertThat(parser.parse("+1"), is("positive 1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void validate_doesNotInvokeHandlers_whenRulesHaveAcceptors() {
+        AtomicInteger handled = new AtomicInteger();
+        RegexDownstrippingParser<String> parser = new RegexDownstrippingParser<>(asList(
+                rule("\\d+", match -> "int " + handled.incrementAndGet(), matched()),
+                rule("\\+(.*)", (match, children) -> "positive " + handled.incrementAndGet() + children.get(0), allChildren()),
+                groupRule("\\(", "\\)", (match, children) -> "group " + handled.incrementAndGet()),
+                rule("\\((.*)\\)", (match, children) -> "" + handled.incrementAndGet() + children.get(0), allChildren())
+        ));
+
+        assertThat(parser.validate("+12"), is(ValidationResult.valid()));
+        assertThat(parser.recognize("++12"), is(true));
+        assertThat(parser.recognize("(+1)(2)"), is(true));
+        assertThat(handled.get(), is(0));
+    }
+
+    @Test
+    public void validate_reportsTheFirstFailingRegion() {
+        RegexDownstrippingParser<String> parser = new RegexDownstrippingParser<>(asList(
+                rule("\\d+", match -> "int", matched()),
+                rule("\\+(.*)", (match, children) -> "positive", allChildren())
+        ));
+
+        ValidationResult result = parser.validate("++12a");
+
+        assertThat(result.isValid(), is(false));
+        assertThat(result.getStart(), is(2));
+        assertThat(result.getEnd(), is(5));
+        assertThat(result.getRegion(), is("12a"));
+    }
+
+    @Test
+    public void recognize_agreesWithParse_whenAChildRegionFails() {
+        List<String> inputs = asList("++a", "++1", "+1", "+a", "++", "a");
+
+        RegexDownstrippingParser<String> accepting = new RegexDownstrippingParser<>(asList(
+                rule("\\d+", match -> "int", matched()),
+                rule("\\+(.*)", (match, children) -> "positive " + children.get(0), allChildren()),
+                rule("\\+\\+.*", match -> "increment", matched())
+        ));
+        RegexDownstrippingParser<String> handling = new RegexDownstrippingParser<>(asList(
+                rule("\\d+", match -> "int"),
+                rule("\\+(.*)", (match, children) -> "positive " + children.get(0)),
+                rule("\\+\\+.*", match -> "increment")
+        ));
+
+        for (RegexDownstrippingParser<String> parser : asList(accepting, handling)) {
+            for (String input : inputs) {
+                assertThat(input, parser.recognize(input), is(parses(parser, input)));
+            }
+            assertThat(parser.validate("++a"), is(ValidationResult.invalid(2, 3, "a")));
+        }
+    }
+
+    @Test
+    public void validate_reportsSourceOffsets_whenFallingBackToTheHandlers() {
+        RegexDownstrippingParser<String> parser = new RegexDownstrippingParser<>(asList(
+                rule("\\d+", match -> "int"),
+                rule("(.*)\\+(.*)", (match, children) -> children.get(0) + " plus " + children.get(1))
+        ));
+
+        assertThat(parser.validate("12+x"), is(ValidationResult.invalid(3, 4, "x")));
+        assertThat(parser.validate("1+2+x"), is(ValidationResult.invalid(4, 5, "x")));
+    }
+
+    @Test
+    public void validate_checksEveryChild_evenWhenTheHandlerWouldNotParseIt() {
+        RegexDownstrippingParser<String> parser = new RegexDownstrippingParser<>(asList(
+                rule("\\w+", match -> match.group(), matched()),
+                listRule(",", (match, children) -> children.get(0))
+        ));
+
+        assertThat(parser.parse("a,!,?"), is("a"));
+        assertThat(parser.validate("a,!,?").isValid(), is(false));
+    }
+
+    private static boolean parses(Parser parser, String input) {
+        try {
+            parser.parse(input);
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void recognize_fallsBackToTheHandlers_withoutAcceptors() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                rule("\\d+", match -> match.group().length() > 3 ? null : "int"),
+                rule("\\+(.*)", (match, children) -> "positive " + children.get(0))
+        ));
+
+        assertThat(parser.recognize("+123"), is(true));
+        assertThat(parser.recognize("+1234"), is(false));
+        assertThat(parser.recognize("-1"), is(false));
+    }
+
+    @Test
+    public void parse_skipsCaptureGroups_notSelectedAsChildren() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                rule("\\w+", match -> "word " + match.group()),
+                children(rule("\\[(\\w+)\\*=(['\"])?(.*)\\2\\]", (match, children) -> String.join(", ", children)), 1, 3),
+                children(rule("(?<name>\\w+)(\\()(?<argument>.*)\\)", (match, children) -> String.join(", ", children)), "name", "argument")
+        ));
+
+        assertThat(parser.parse("[href*='link']"), is("word href, word link"));
+        assertThat(parser.parse("not(this)"), is("word not, word this"));
+        assertThat(parser.recognize("[href*=\"link\"]"), is(true));
+    }
+
+    @Test
+    public void parse_isNotAffected_byChangesToTheSelectedGroups() {
+        int[] groups = {1};
+        Rule<String> rule = new SimpleRule<String>(Pattern.compile("(\\d)(\\w)"),
+                (match, children, parser) -> String.join(", ", children), null, groups);
+        Parser parser = new RegexDownstrippingParser<>(asList(
+                rule("\\d", match -> "digit"),
+                rule
+        ));
+
+        groups[0] = 2;
+
+        assertThat(parser.parse("1a"), is("digit"));
+        assertThat(rule.children()[0], is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void children_rejectsUnknownGroups() {
+        children(rule("(\\w+)\\((?<argument>.*)\\)", match -> ""), "name");
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.aanchev.parser.Parser.parser;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class SingleFlightParserTest {
+
+    private final AtomicInteger parses = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final Parser blocking = parser(input -> {
+        parses.incrementAndGet();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        if (input.toString().startsWith("!")) {
+            throw new ParseException("Unable to parse " + input);
+        }
+        return "parsed " + input;
+    });
+
+    @Test
+    public void parseAsync_sharesTheComputation_betweenConcurrentCallers() {
+        SingleFlightParser parser = new SingleFlightParser(blocking);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(parser.parseAsync(new StringBuilder("input")));
+        }
+        CompletableFuture<String> other = parser.parseAsync("other");
+        assertThat(parser.inFlight(), is(2));
+
+        release.countDown();
+        for (CompletableFuture<String> result : results) {
+            assertThat(result.join(), is("parsed input"));
+        }
+        assertThat(other.join(), is("parsed other"));
+        assertThat(parses.get(), is(2));
+        assertThat(parser.inFlight(), is(0));
+    }
+
+    @Test
+    public void parseAsync_doesNotKeepResults() {
+        release.countDown();
+        SingleFlightParser parser = new SingleFlightParser(blocking);
+
+        assertThat(parser.parse("input"), is("parsed input"));
+        assertThat(parser.parse("input"), is("parsed input"));
+        assertThat(parses.get(), is(2));
+    }
+
+    @Test
+    public void parseAsync_propagatesFailures_toAllCallers() {
+        SingleFlightParser parser = new SingleFlightParser(blocking);
+
+        CompletableFuture<Object> first = parser.parseAsync("!input");
+        CompletableFuture<Object> second = parser.parseAsync("!input");
+        release.countDown();
+
+        for (CompletableFuture<Object> result : asList(first, second)) {
+            try {
+                result.join();
+                throw new AssertionError("Expected a failure");
+            } catch (Exception e) {
+                assertThat(e.getCause() instanceof ParseException, is(true));
+            }
+        }
+        assertThat(parses.get(), is(1));
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_rethrowsTheFailure() {
+        release.countDown();
+        new SingleFlightParser(blocking).parse("!input");
+    }
+
+    @Test
+    public void cancellingOneCaller_doesNotAffectTheOthers() {
+        SingleFlightParser parser = new SingleFlightParser(blocking);
+
+        CompletableFuture<String> cancelled = parser.parseAsync("input");
+        CompletableFuture<String> waiting = parser.parseAsync("input");
+        cancelled.cancel(true);
+        release.countDown();
+
+        assertThat(waiting.join(), is("parsed input"));
+    }
+}
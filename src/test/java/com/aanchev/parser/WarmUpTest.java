@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser;
+
+import com.aanchev.parser.WarmUp.Report;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.aanchev.parser.ListRule.listRule;
+import static com.aanchev.parser.Rules.rule;
+import static com.aanchev.parser.WarmUp.warmUp;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class WarmUpTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Parser parser = new RegexDownstrippingParser<String>(asList(
+            rule("\\d+", match -> "int " + match.group()),
+            rule("\\+(.*)", (match, children) -> "positive " + children.get(0)),
+            listRule("\\s*,\\s*", (match, children) -> children.toString())
+    ));
+
+    @Test
+    public void inputRecorder_writesSamples_thatCanBeReadBack() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("samples");
+
+        try (InputRecorder recorder = InputRecorder.open(file, 1, 3)) {
+            Parser recording = recorder.wrap(parser);
+            assertThat(recording.parse("+1"), is("positive int 1"));
+            recording.parse("1, 2");
+            recording.parse("3");
+            recording.parse("4");
+            assertThat(recorder.samples(), is(3));
+        }
+
+        assertThat(InputRecorder.read(file), is(asList("+1", "1, 2", "3")));
+    }
+
+    @Test
+    public void inputRecorder_samplesNothing_atZeroRate() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("samples");
+
+        try (InputRecorder recorder = InputRecorder.open(file, 0, 100)) {
+            recorder.record("1");
+        }
+
+        assertThat(InputRecorder.read(file), is(empty()));
+    }
+
+    @Test
+    public void inputRecorder_ignoresAnIncompleteLastSample() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("samples");
+
+        try (InputRecorder recorder = InputRecorder.open(file, 1, 100)) {
+            recorder.record("ünïcode");
+            recorder.record("truncated");
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertThat(InputRecorder.read(file), is(asList("ünïcode")));
+    }
+
+    @Test
+    public void inputRecorder_keepsTheNewestSamples_acrossRestarts() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("samples");
+
+        for (int run = 0; run < 5; run++) {
+            try (InputRecorder recorder = InputRecorder.open(file, 1, 2)) {
+                recorder.record("a" + run);
+                recorder.record("b" + run);
+                recorder.record("c" + run);
+            }
+        }
+
+        assertThat(InputRecorder.read(file), is(asList("a3", "b3", "a4", "b4")));
+    }
+
+    @Test
+    public void inputRecorder_flushesEachSample() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("samples");
+
+        try (InputRecorder recorder = InputRecorder.open(file, 1, 100)) {
+            recorder.record("1");
+            assertThat(InputRecorder.read(file), is(asList("1")));
+        }
+    }
+
+    @Test
+    public void inputRecorder_appendsAfter_anIncompleteLastSample() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("samples");
+
+        try (InputRecorder recorder = InputRecorder.open(file, 1, 100)) {
+            recorder.record("1");
+            recorder.record("truncated");
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (InputRecorder recorder = InputRecorder.open(file, 1, 100)) {
+            recorder.record("2");
+        }
+
+        assertThat(InputRecorder.read(file), is(asList("1", "2")));
+    }
+
+    @Test
+    public void warmUp_replaysTheSamples_andPrefillsCaches() {
+        Set<String> prefilled = ConcurrentHashMap.newKeySet();
+        Parser prefill = Parser.parser(input -> prefilled.add(input.toString()));
+        List<String> samples = asList("+1", "1, +2, 3", "+", "42");
+
+        Report report = warmUp(parser, prefill, 0.5, 5, 10).start(samples).join();
+
+        assertThat(report.getSamples(), is(4));
+        assertThat(report.getFailures(), is(1));
+        assertThat(report.rounds(), greaterThanOrEqualTo(1));
+        assertThat(report.getPrefilled(), is(4));
+        assertThat(prefilled.size(), is(4));
+    }
+
+    @Test
+    public void warmUp_countsSamples_failingWithAnyException() {
+        Parser failing = new RegexDownstrippingParser<Integer>(asList(
+                rule("\\d+", match -> Integer.parseInt(match.group())),
+                rule("\\w+", match -> {
+                    throw new IllegalStateException("Bad sample " + match.group());
+                })
+        ));
+        Parser prefill = Parser.parser(input -> failing.parse(input));
+
+        Report report = warmUp(failing, prefill, 0.5, 1, 3).start(asList("1", "99999999999", "a")).join();
+
+        assertThat(report.getFailures(), is(2));
+        assertThat(report.getPrefilled(), is(1));
+    }
+
+    @Test
+    public void warmUp_countsSamples_overflowingTheStack() {
+        Parser overflowing = Parser.parser(input -> {
+            if (input.length() > 1) {
+                throw new StackOverflowError();
+            }
+            return input;
+        });
+
+        Report report = warmUp(overflowing, overflowing, 0.5, 1, 3).run(asList("1", "deep"));
+
+        assertThat(report.getFailures(), is(1));
+        assertThat(report.getPrefilled(), is(1));
+    }
+
+    @Test
+    public void warmUp_stopsAfterTheMaximumRounds_whenNotSteady() {
+        Report report = warmUp(parser, null, 0, 1, 3).run(asList("+1", "1, 2"));
+
+        assertThat(report.rounds(), is(3));
+        assertThat(report.isSteady(), is(false));
+    }
+
+    @Test
+    public void warmUp_isSteady_withoutSamples() {
+        Report report = warmUp(parser).run(emptyList());
+
+        assertThat(report.rounds(), is(0));
+        assertThat(report.isSteady(), is(true));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser.rules;
+
+import com.aanchev.parser.Lexer;
+import com.aanchev.parser.ParseException;
+import com.aanchev.parser.Parser;
+import com.aanchev.parser.RegexDownstrippingParser;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.aanchev.parser.Lexer.lexer;
+import static com.aanchev.parser.Lexer.skip;
+import static com.aanchev.parser.Lexer.token;
+import static com.aanchev.parser.ListRule.listRule;
+import static com.aanchev.parser.Rules.rule;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ListRuleTest {
+
+    @Test
+    public void listRule_splitsOnTopLevelSeparators_only() {
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("\\w+", match -> match.group()),
+                rule("'[^']*'", match -> match.group()),
+                listRule("\\[(.*)\\]", "\\s*,\\s*", (match, children) -> children),
+                listRule("\\s*,\\s*", (match, children) -> children)
+        ));
+
+        assertThat(parser.parse("a, [b, c], 'd, e' ,f"), is(asList(
+                "a", asList("b", "c"), "'d, e'", "f"
+        )));
+    }
+
+    @Test
+    public void listRule_matchesEmptyLists_whenTheElementsAreInAGroup() {
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("\\w+", match -> match.group()),
+                listRule("\\[(.*)\\]", ",", (match, children) -> children)
+        ));
+
+        assertThat(parser.parse("[]"), is(emptyList()));
+        assertThat(parser.parse("[a]"), is(asList("a")));
+    }
+
+    @Test
+    public void listRule_doesNotMatch_outsideItsCardinality() {
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("\\w+", match -> match.group()),
+                listRule("\\((.*)\\)", ",", 2, 3, (match, children) -> "pair or triple " + children),
+                rule("\\(.*\\)", match -> "other")
+        ));
+
+        assertThat(parser.parse("(a)"), is("other"));
+        assertThat(parser.parse("(a,b)"), is("pair or triple [a, b]"));
+        assertThat(parser.parse("(a,b,c)"), is("pair or triple [a, b, c]"));
+        assertThat(parser.parse("(a,b,c,d)"), is("other"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void listRule_doesNotMatch_unbalancedGroups() {
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("\\w+", match -> match.group()),
+                listRule(",", (match, children) -> children)
+        ));
+
+        parser.parse("a,(b,c");
+    }
+
+    @Test
+    public void listRule_parsesElementsLazily() {
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("\\w+", match -> match.group()),
+                listRule(",", (match, children) -> children.get(0))
+        ));
+
+        assertThat(parser.parse("a,!,?"), is("a"));
+    }
+
+    @Test
+    public void listRule_splitsTokens_whenUsedWithALexer() {
+        Lexer lexer = lexer(asList(
+                skip("\\s+"),
+                token('i', "\\w+"),
+                token(',', ","),
+                token('[', "\\["),
+                token(']', "\\]")
+        ));
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("i", match -> match.group()),
+                listRule("\\[(.*)\\]", ",", (match, children) -> children)
+        ), lexer);
+
+        assertThat(parser.parse("[ab, cd, ef]"), is(asList("ab", "cd", "ef")));
+        assertThat(parser.parse("[ab, [cd , ef]]"), is(asList("ab", asList("cd", "ef"))));
+    }
+
+    @Test
+    public void listRule_handlesLongLists() {
+        int size = 100_000;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            input.append(i == 0 ? "" : ", ").append(i);
+        }
+
+        Parser parser = new RegexDownstrippingParser<Object>(asList(
+                rule("\\d+", match -> Integer.parseInt(match.group())),
+                listRule("\\s*,\\s*", (match, children) -> children)
+        ));
+
+        List<?> list = parser.parse(input);
+        assertThat(list.size(), is(size));
+        assertThat(list.get(size - 1), is(size - 1));
+        assertThat(parser.recognize(input), is(true));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser.rules;
+
+import com.aanchev.parser.Delimiters;
+import com.aanchev.parser.Delimiters.Group;
+import com.aanchev.parser.ParseException;
+import com.aanchev.parser.Parser;
+import com.aanchev.parser.RegexDownstrippingParser;
+import com.aanchev.parser.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.aanchev.parser.Delimiters.delimiters;
+import static com.aanchev.parser.MultiGroupRule.multiGroupRule;
+import static com.aanchev.parser.Parser.parser;
+import static com.aanchev.parser.Rules.rule;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
+
+public class MultiGroupRuleTest {
+
+    // test just the scanning functionality //
+
+    @Test
+    public void findTopLevelGroups_returnsEmpty_whenNoGroupsFound() {
+        List<Group> groups = Delimiters.DEFAULT.findTopLevelGroups("ul > li");
+
+        assertThat(groups, is(empty()));
+    }
+
+    @Test
+    public void findTopLevelGroups_findsGroupsOfEveryKind_inOnePass() {
+        String input = "f(a)[b]{c}";
+
+        List<Group> groups = Delimiters.DEFAULT.findTopLevelGroups(input);
+
+        assertThat(groups, is(asList(
+                new Group('(', 1, 4),
+                new Group('[', 4, 7),
+                new Group('{', 7, 10)
+        )));
+    }
+
+    @Test
+    public void findTopLevelGroups_skipsNestedGroups_ofDifferentKinds() {
+        String input = "a[(b)]{[c], (d)}";
+
+        List<Group> groups = Delimiters.DEFAULT.findTopLevelGroups(input);
+
+        assertThat(groups, is(asList(
+                new Group('[', 1, 6),
+                new Group('{', 6, 16)
+        )));
+    }
+
+    @Test
+    public void findTopLevelGroups_ignoresBrackets_insideQuotes() {
+        String input = "a[href*='[127.0.0.1]'][title=\"(]\"]";
+
+        List<Group> groups = Delimiters.DEFAULT.findTopLevelGroups(input);
+
+        assertThat(groups, is(asList(
+                new Group('[', 1, 22),
+                new Group('[', 22, 34)
+        )));
+    }
+
+    @Test
+    public void findTopLevelGroups_ignoresEscapedCharacters() {
+        String input = "a\\(b [c\\]] 'd\\'(' e";
+
+        List<Group> groups = Delimiters.DEFAULT.findTopLevelGroups(input);
+
+        assertThat(groups, is(asList(
+                new Group('[', 5, 10)
+        )));
+    }
+
+    @Test(expected = ParseException.class)
+    public void findTopLevelGroups_throws_withImproperNesting() {
+        Delimiters.DEFAULT.findTopLevelGroups("a[(b])");
+    }
+
+    @Test(expected = ParseException.class)
+    public void findTopLevelGroups_throws_withUnterminatedQuote() {
+        Delimiters.DEFAULT.findTopLevelGroups("a['b]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void delimiters_rejects_unpairedBrackets() {
+        delimiters("()[");
+    }
+
+
+    // test the rule contract //
+
+    @Test
+    public void multiGroupRule_matches_onlyTopLevelGroups_withTheirTypes() {
+        String input = "call(a, [b]) {c; (d)}";
+
+        boolean[] called = {false};
+        Rule<?> rule = multiGroupRule("()[]{}", "'\"", (match, groups, children, parser) -> {
+            assertThat(groups.size(), is(2));
+            assertThat(groups.get(0).getOpening(), is('('));
+            assertThat(groups.get(1).getOpening(), is('{'));
+            assertThat(children.get(0), is("(a, [b])"));
+            assertThat(children.get(1), is("{c; (d)}"));
+
+            called[0] = true;
+            return "";
+        });
+
+        Matcher match = rule.pattern().matcher(input);
+        assumeTrue(match.matches());
+
+        Parser parser = parser(s -> s);
+        rule.handle(match, null, parser);
+
+        assertThat(called[0], is(true));
+    }
+
+    @Test
+    public void multiGroupRule_doesNotMatch_unbalancedGroups() {
+        String input = "a[(b])";
+
+        Rule<String> rule = multiGroupRule("()[]", "", (m, c) -> "");
+
+        Matcher match = Pattern.compile(".*+").matcher(input);
+        assumeTrue(match.matches());
+        assertThat(rule.handle(match, null, null), nullValue());
+    }
+
+    @Test
+    public void multiGroupRule_doesNotMatch_whenUnnecessary() {
+        String input = "{1, [2]}";
+
+        Rule<String> rule = multiGroupRule("()[]{}", "", (m, c) -> "should not happen");
+
+        Matcher match = Pattern.compile(".*+").matcher(input);
+        assumeTrue(match.matches());
+
+        assertThat(rule.handle(match, null, null), nullValue());
+    }
+
+    @Test
+    public void multiGroupRule_replacesSeveralGroupRules_inAGrammar() {
+        Parser parser = new RegexDownstrippingParser<String>(asList(
+                rule("(\\w+)([\\[(].*)",
+                        (match, children) -> children.get(0) + children.get(1)),
+                rule("\\w+",
+                        (match, children) -> String.format("tag '%s'", match.group())),
+                multiGroupRule("()[]", "'\"",
+                        (match, children) -> String.join(",", children)),
+                rule("\\[(\\w+)\\*=(['\"])(.*)\\2\\]",
+                        (match, children) -> String.format(" with attribute '%s' containing '%s'", match.group(1), match.group(3))),
+                rule("\\((\\w+)\\)",
+                        (match, children) -> String.format(" with pseudo-class '%s'", match.group(1)))
+        ));
+
+        assertThat(parser.parse("a[href*='(]'](hover)"),
+                is("tag 'a' with attribute 'href' containing '(]', with pseudo-class 'hover'"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Anko Anchev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.aanchev.parser.rules;
+
+import com.aanchev.parser.ParseException;
+import com.aanchev.parser.Parser;
+import com.aanchev.parser.RegexDownstrippingParser;
+import com.aanchev.parser.Rule;
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.aanchev.parser.OperatorRule.Associativity.LEFT;
+import static com.aanchev.parser.OperatorRule.Associativity.RIGHT;
+import static com.aanchev.parser.OperatorRule.*;
+import static com.aanchev.parser.Rules.rule;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
+
+public class OperatorRuleTest {
+
+    private static Parser arithmetic() {
+        return new RegexDownstrippingParser<String>(asList(
+                operatorRule(asList(
+                        infix("\\+", 10, LEFT, (match, operands) -> String.format("(%s + %s)", operands.get(0), operands.get(1))),
+                        infix("-", 10, LEFT, (match, operands) -> String.format("(%s - %s)", operands.get(0), operands.get(1))),
+                        infix("\\*", 20, LEFT, (match, operands) -> String.format("(%s * %s)", operands.get(0), operands.get(1))),
+                        infix("\\^", 30, RIGHT, (match, operands) -> String.format("(%s ^ %s)", operands.get(0), operands.get(1))),
+                        infix("<=?", 5, LEFT, (match, operands) -> String.format("(%s %s %s)", operands.get(0), match.group(), operands.get(1))),
+                        prefix("-", 40, (match, operands) -> "-" + operands.get(0)),
+                        postfix("!", 50, (match, operands) -> operands.get(0) + "!")
+                )),
+                rule("\\((.*)\\)", (match, children) -> children.get(0)),
+                rule("\\w+", match -> match.group())
+        ));
+    }
+
+    @Test
+    public void operatorRule_honorsPrecedence() {
+        assertThat(arithmetic().parse("a+b*c-d"), is("((a + (b * c)) - d)"));
+    }
+
+    @Test
+    public void operatorRule_honorsAssociativity() {
+        assertThat(arithmetic().parse("a - b - c"), is("((a - b) - c)"));
+        assertThat(arithmetic().parse("a ^ b ^ c"), is("(a ^ (b ^ c))"));
+    }
+
+    @Test
+    public void operatorRule_supportsPrefixAndPostfixOperators() {
+        assertThat(arithmetic().parse("-a * (b + c)!"), is("(-a * (b + c)!)"));
+        assertThat(arithmetic().parse("a - -b"), is("(a - -b)"));
+    }
+
+    @Test
+    public void operatorRule_prefersLongestOperatorSymbol() {
+        assertThat(arithmetic().parse("a <= b + c"), is("(a <= (b + c))"));
+        assertThat(arithmetic().parse("a < b"), is("(a < b)"));
+    }
+
+    @Test
+    public void operatorRule_delegatesBracketedOperands_toTheParser() {
+        assertThat(arithmetic().parse("(a + b) * (c - d)"), is("((a + b) * (c - d))"));
+    }
+
+    @Test
+    public void operatorRule_trimsWhitespace_aroundOperands() {
+        assertThat(arithmetic().parse("  ( a +b )\t*  c "), is("((a + b) * c)"));
+    }
+
+    @Test
+    public void operatorRule_parsesLongChains() {
+        StringBuilder input = new StringBuilder("a");
+        for (int i = 0; i < 10_000; i++) {
+            input.append("+a");
+        }
+
+        String result = arithmetic().parse(input);
+
+        assertThat(result.length(), is(10_001 + 10_000 * 5));
+    }
+
+    @Test(expected = ParseException.class)
+    public void operatorRule_doesNotMatch_withMissingOperand() {
+        arithmetic().parse("a + * b");
+    }
+
+    @Test
+    public void operatorRule_doesNotMatch_withoutTopLevelOperators() {
+        String input = "(a + b)";
+
+        Rule<String> rule = operatorRule(singletonList(
+                infix("\\+", 10, LEFT, (m, c) -> "should not happen")));
+
+        Matcher match = Pattern.compile(".*+").matcher(input);
+        assumeTrue(match.matches());
+
+        assertThat(rule.handle(match, null, null), nullValue());
+    }
+}